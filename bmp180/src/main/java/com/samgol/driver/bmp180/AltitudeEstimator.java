@@ -0,0 +1,138 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+
+/**
+ * Estimates altitude and vertical speed from the sample stream with a constant velocity Kalman
+ * filter. Each sample costs a fixed handful of multiplications and allocates nothing, so it can
+ * run at the full sensor rate; feed it with {@link Bmp180#addSampleListener} or call
+ * {@link #update(float, long)} directly.
+ * <p>
+ * The filter is tuned by two numbers: the altitude noise of the sensor and how hard the vertical
+ * speed may change, as a white noise acceleration. A larger acceleration follows climbs sooner, a
+ * smaller one gives a smoother climb rate.
+ */
+public final class AltitudeEstimator implements Bmp180.Callback {
+    /**
+     * The altitude noise of the sensor in the standard mode, from the datasheet RMS pressure
+     * noise of 5 Pa at about 0.083 m/Pa.
+     */
+    public static final float DEFAULT_ALTITUDE_NOISE_M = 0.42f;
+    public static final float DEFAULT_ACCELERATION_NOISE = 1.0f;
+
+    // samples further apart than this restart the estimate
+    static final long MAX_GAP_NS = 5000000000L;
+    private static final double INITIAL_SPEED_VARIANCE = 100;
+
+    private final double measurementVariance;
+    private final double accelerationVariance;
+
+    // guarded by this
+    private boolean initialized;
+    private long lastTimestamp;
+    private double altitude;
+    private double speed;
+    private double p00;
+    private double p01;
+    private double p11;
+
+    public AltitudeEstimator() {
+        this(DEFAULT_ALTITUDE_NOISE_M, DEFAULT_ACCELERATION_NOISE);
+    }
+
+    /**
+     * @param altitudeNoise     the RMS altitude noise of the samples in meters
+     * @param accelerationNoise the RMS vertical acceleration the estimate allows, in m/s^2
+     */
+    public AltitudeEstimator(float altitudeNoise, float accelerationNoise) {
+        if (!(altitudeNoise > 0) || !(accelerationNoise > 0)) {
+            throw new IllegalArgumentException("noise must be positive");
+        }
+        measurementVariance = (double) altitudeNoise * altitudeNoise;
+        accelerationVariance = (double) accelerationNoise * accelerationNoise;
+    }
+
+    @Override
+    public void onSample(Bmp180Sample sample) {
+        update(sample.getAltitude(), sample.getTimestamp());
+    }
+
+    @Override
+    public void onError(IOException e) {
+    }
+
+    /**
+     * Adds an altitude measurement.
+     *
+     * @param measuredAltitude the altitude in meters
+     * @param timestamp        the time of the measurement in nanoseconds, on a monotonic clock
+     */
+    public synchronized void update(float measuredAltitude, long timestamp) {
+        long elapsed = timestamp - lastTimestamp;
+        if (!initialized || elapsed > MAX_GAP_NS) {
+            initialized = true;
+            lastTimestamp = timestamp;
+            altitude = measuredAltitude;
+            speed = 0;
+            p00 = measurementVariance;
+            p01 = 0;
+            p11 = INITIAL_SPEED_VARIANCE;
+            return;
+        }
+        if (elapsed > 0) {
+            lastTimestamp = timestamp;
+            double dt = elapsed * 1e-9;
+            double dt2 = dt * dt;
+            // predict with constant speed, the acceleration noise widens the covariance
+            altitude += speed * dt;
+            p00 += 2 * dt * p01 + dt2 * p11 + dt2 * dt2 / 4 * accelerationVariance;
+            p01 += dt * p11 + dt2 * dt / 2 * accelerationVariance;
+            p11 += dt2 * accelerationVariance;
+        }
+        double residual = measuredAltitude - altitude;
+        double s = p00 + measurementVariance;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        altitude += k0 * residual;
+        speed += k1 * residual;
+        p11 -= k1 * p01;
+        p01 -= k0 * p01;
+        p00 -= k0 * p00;
+    }
+
+    /**
+     * Returns the estimated altitude.
+     *
+     * @return the altitude in meters, NaN before the first sample
+     */
+    public synchronized float getAltitude() {
+        return initialized ? (float) altitude : Float.NaN;
+    }
+
+    /**
+     * Returns the estimated vertical speed, positive when climbing.
+     *
+     * @return the vertical speed in m/s, NaN before the first sample
+     */
+    public synchronized float getVerticalSpeed() {
+        return initialized ? (float) speed : Float.NaN;
+    }
+
+    /**
+     * Copies the vertical speed and the altitude into {@code dst}, consistently with each other.
+     *
+     * @param dst    the destination, at least two elements from {@code offset}
+     * @param offset the index of the vertical speed
+     */
+    public synchronized void copyTo(float[] dst, int offset) {
+        dst[offset] = getVerticalSpeed();
+        dst[offset + 1] = getAltitude();
+    }
+
+    /**
+     * Forgets the estimate; the next sample starts a new one.
+     */
+    public synchronized void reset() {
+        initialized = false;
+    }
+}
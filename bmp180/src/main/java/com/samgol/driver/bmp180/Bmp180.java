@@ -1,5 +1,6 @@
 package com.samgol.driver.bmp180;
 
+import android.os.SystemClock;
 import android.support.annotation.IntDef;
 import android.util.Log;
 
@@ -7,10 +8,15 @@ import com.google.android.things.pio.I2cDevice;
 import com.google.android.things.pio.PeripheralManagerService;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Retention;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static java.lang.annotation.RetentionPolicy.SOURCE;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 
 public class Bmp180 implements AutoCloseable {
@@ -19,13 +25,20 @@ public class Bmp180 implements AutoCloseable {
 
     public final static int BMP180_ADDRESS = 0x77;
 
+    /**
+     * Receives the result of an asynchronous conversion.
+     */
+    public interface Callback {
+        void onSample(Bmp180Sample sample);
+
+        void onError(IOException e);
+    }
+
     @Retention(SOURCE)
     @IntDef({BMP180_ULTRA_LOW_POWER, BMP180_STANDARD, BMP180_HIGH_RES, BMP180_ULTRA_HIGH_RES})
     public @interface Mode {
     }
 
-    private static final double POW_FACT = 0.1903;
-
     public final static int BMP180_ULTRA_LOW_POWER = 0;
     public final static int BMP180_STANDARD = 1;
     public final static int BMP180_HIGH_RES = 2;
@@ -33,6 +46,11 @@ public class Bmp180 implements AutoCloseable {
 
 
     private static final int modeDelay[] = {5, 8, 14, 26};
+    private static final long[] PRESSURE_CONVERSION_NS = {4500000, 7500000, 13500000, 25500000};
+    static final int TEMPERATURE_DELAY_MS = 5;
+    private static final int MIN_PERIOD_MS = 50;
+    // while sampling continuously, samples older than this many periods are not served
+    private static final int MAX_AGE_PERIODS = 4;
 
     static final float MAX_FREQ_HZ = 181f;
     static final float MIN_FREQ_HZ = 23.1f;
@@ -43,18 +61,10 @@ public class Bmp180 implements AutoCloseable {
     public static final float MIN_TEMP_C = -40f;
     static final float MAX_TEMP_C = 85f;
 
+    static final float MIN_PRESSURE_HPA = 300f;
     static final float MAX_PRESSURE_HPA = 1100f;
 
     private final static int BMP180_CAL_AC1 = 0xAA;
-    private final static int BMP180_CAL_AC2 = 0xAC;
-    private final static int BMP180_CAL_AC3 = 0xAE;
-    private final static int BMP180_CAL_AC4 = 0xB0;
-    private final static int BMP180_CAL_AC5 = 0xB2;
-    private final static int BMP180_CAL_AC6 = 0xB4;
-    private final static int BMP180_CAL_B1 = 0xB6;
-    private final static int BMP180_CAL_B2 = 0xB8;
-    private final static int BMP180_CAL_MC = 0xBC;
-    private final static int BMP180_CAL_MD = 0xBE;
 
     private final static int BMP180_CONTROL = 0xF4;
     private final static int BMP180_TEMPERATURE_DATA = 0xF6;
@@ -62,35 +72,55 @@ public class Bmp180 implements AutoCloseable {
     private final static int BMP180_READ_TEMPERATURE_CMD = 0x2E;
     private final static int BMP180_READ_PRESSURE_CMD = 0x34;
 
-    private int AC1 = 0;
-    private int AC2 = 0;
-    private int AC3 = 0;
-    private int AC4 = 0;
-    private int AC5 = 0;
-    private int AC6 = 0;
-    private int B1 = 0;
-    private int B2 = 0;
-    private int MC = 0;
-    private int MD = 0;
+    private static final int CALIBRATION_ATTEMPTS = 3;
+    private static final int SPOT_CHECK_OFFSET = Bmp180Calibration.LENGTH - 4;
+    private static final int SPOT_CHECK_LENGTH = 4;
 
+    private Bmp180Calibration calibration;
+    private final Bmp180CalibrationCache calibrationCache;
+    private final String calibrationKey;
 
-    private I2cDevice mDevice;
+
+    private ResilientTransport mDevice;
+    private final byte[] buffer = new byte[Bmp180Calibration.LENGTH];
+    private long transactionCount;
+    private final Bmp180Metrics metrics = new Bmp180Metrics();
 
     private int mode = BMP180_STANDARD;
 
-    private LastRead lastRawTemp = new LastRead();
-    private LastRead lastRawPressure = new LastRead();
-    private LastRead lastPressure = new LastRead();
-    private LastRead lastTemperature = new LastRead();
+    private final ConversionEngine engine;
+    // written only by the conversion thread, read wait-free by any number of readers
+    private volatile Bmp180Sample lastSample;
+    private final CopyOnWriteArrayList<Callback> listeners = new CopyOnWriteArrayList<>();
+
 
+    // replaced and updated without the lock, read once per sample
+    private volatile SeaLevelReference seaLevelReference = new SeaLevelReference();
 
-    private int standardSeaLevelPressure = 101325;
+    private Bmp180Filter pressureFilter;
+    private Bmp180Governor governor;
+    private Bmp180Filter temperatureFilter;
 
     public Bmp180(String i2cName) {
+        this(i2cName, null);
+    }
+
+    /**
+     * Creates a driver on the given bus that takes the calibration from {@code cache} when the
+     * sensor still matches it, and stores it there otherwise.
+     *
+     * @param i2cName I2C bus the sensor is connected to.
+     * @param cache   the calibration cache, or null to always read the calibration
+     */
+    public Bmp180(String i2cName, Bmp180CalibrationCache cache) {
+        engine = new ConversionEngine(this, null);
+        calibrationCache = cache;
+        calibrationKey = i2cName;
         try {
-            mDevice = new PeripheralManagerService().openI2cDevice(i2cName, BMP180_ADDRESS);
+            mDevice = new ResilientTransport(new I2cDeviceTransport(
+                    new PeripheralManagerService().openI2cDevice(i2cName, BMP180_ADDRESS)), metrics);
             try {
-                readCalibrationData();
+                loadCalibrationWithRetries();
             } catch (Exception e) {
                 Log.e(TAG, "Bmp180 Error: ", e);
             }
@@ -100,9 +130,44 @@ public class Bmp180 implements AutoCloseable {
     }
 
     public Bmp180(I2cDevice i2cDevice) {
-        mDevice = i2cDevice;
+        this(new I2cDeviceTransport(i2cDevice));
+    }
+
+    /**
+     * Creates a driver on top of an arbitrary transport, e.g. a {@link Bmp180Simulator}.
+     *
+     * @param transport the transport to talk to the sensor through
+     */
+    public Bmp180(Bmp180Transport transport) {
+        this(transport, null);
+    }
+
+    /**
+     * Creates a driver whose conversions run on a scheduler shared with other devices.
+     *
+     * @param transport the transport to talk to the sensor through
+     * @param scheduler the shared scheduler, or null to use a dedicated one
+     */
+    Bmp180(Bmp180Transport transport, ScheduledExecutorService scheduler) {
+        this(transport, scheduler, null, null);
+    }
+
+    /**
+     * Creates a driver on a shared scheduler that uses a calibration cache.
+     *
+     * @param transport the transport to talk to the sensor through
+     * @param scheduler the shared scheduler, or null to use a dedicated one
+     * @param cache     the calibration cache, or null to always read the calibration
+     * @param key       the key of the sensor in the cache
+     */
+    Bmp180(Bmp180Transport transport, ScheduledExecutorService scheduler,
+           Bmp180CalibrationCache cache, String key) {
+        engine = new ConversionEngine(this, scheduler);
+        mDevice = new ResilientTransport(transport, metrics);
+        calibrationCache = cache;
+        calibrationKey = key;
         try {
-            readCalibrationData();
+            loadCalibrationWithRetries();
         } catch (Exception e) {
             Log.e(TAG, "Bmp180 Error: ", e);
         }
@@ -113,135 +178,473 @@ public class Bmp180 implements AutoCloseable {
         this.mode = mode;
     }
 
-    private int readU16(int register) throws IOException {
-        return I2cUtils.readU16BE(mDevice, register);
+    /**
+     * Returns the number of I2C transactions issued to the device so far.
+     *
+     * @return the number of I2C transactions issued to the device so far.
+     */
+    public synchronized long getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Returns the latency histograms and counters of this device.
+     *
+     * @return the metrics of this device.
+     */
+    public Bmp180Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the transport with the retry and circuit breaker policy of this device.
+     *
+     * @return the transport, or null if the bus could not be opened or the device is closed
+     */
+    public synchronized ResilientTransport getTransport() {
+        return mDevice;
+    }
+
+    private void readBlock(int register, int length) throws IOException {
+        transactionCount++;
+        long start = System.nanoTime();
+        try {
+            mDevice.readRegBuffer(register, buffer, length);
+        } finally {
+            metrics.record(Bmp180Metrics.I2C_TRANSACTION, System.nanoTime() - start);
+        }
+    }
+
+    private void writeControl(int command) throws IOException {
+        transactionCount++;
+        long start = System.nanoTime();
+        try {
+            mDevice.writeRegByte(BMP180_CONTROL, (byte) command);
+        } finally {
+            metrics.record(Bmp180Metrics.I2C_TRANSACTION, System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void readCalibrationData() throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            // Reads the whole calibration EEPROM from the IC in one burst
+            readBlock(BMP180_CAL_AC1, Bmp180Calibration.LENGTH);
+            if (Bmp180Calibration.isValid(buffer, 0)) {
+                break;
+            }
+            if (attempt == CALIBRATION_ATTEMPTS) {
+                throw new IOException("invalid calibration data");
+            }
+            Log.w(TAG, "invalid calibration data, retrying");
+        }
+        calibration = Bmp180Calibration.fromEeprom(buffer, 0);
+        if (calibrationCache != null && calibrationKey != null) {
+            calibrationCache.put(calibrationKey, buffer);
+        }
+    }
+
+    private synchronized void loadCalibration() throws IOException {
+        byte[] cached = calibrationCache != null && calibrationKey != null
+                ? calibrationCache.get(calibrationKey) : null;
+        if (cached != null) {
+            // the last words differ between parts, reading them tells whether the sensor changed
+            readBlock(BMP180_CAL_AC1 + SPOT_CHECK_OFFSET, SPOT_CHECK_LENGTH);
+            boolean match = true;
+            for (int i = 0; i < SPOT_CHECK_LENGTH; i++) {
+                match &= buffer[i] == cached[SPOT_CHECK_OFFSET + i];
+            }
+            if (match) {
+                calibration = Bmp180Calibration.fromEeprom(cached, 0);
+                return;
+            }
+            Log.i(TAG, "cached calibration does not match the sensor, reading it");
+        }
+        readCalibrationData();
     }
 
-    private int readS16(int register) throws IOException {
-        return I2cUtils.readS16BE(mDevice, register);
+    /**
+     * Loads the calibration while the driver is created, backing off between the attempts of a
+     * failing transfer without holding the lock.
+     */
+    private void loadCalibrationWithRetries() throws IOException {
+        while (true) {
+            try {
+                loadCalibration();
+                return;
+            } catch (ResilientTransport.RetryException e) {
+                try {
+                    NANOSECONDS.sleep(e.getDelayNs());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted during backoff");
+                }
+            }
+        }
     }
 
-    private synchronized void readCalibrationData() throws Exception {
-        // Reads the calibration data from the IC
-        AC1 = readS16(BMP180_CAL_AC1);
-        AC2 = readS16(BMP180_CAL_AC2);
-        AC3 = readS16(BMP180_CAL_AC3);
-        AC4 = readU16(BMP180_CAL_AC4);
-        AC5 = readU16(BMP180_CAL_AC5);
-        AC6 = readU16(BMP180_CAL_AC6);
-        B1 = readS16(BMP180_CAL_B1);
-        B2 = readS16(BMP180_CAL_B2);
-        MC = readS16(BMP180_CAL_MC);
-        MD = readS16(BMP180_CAL_MD);
+    /**
+     * Returns the calibration, reading it again if it could not be read so far.
+     */
+    private Bmp180Calibration requireCalibration() throws IOException {
+        if (calibration == null) {
+            checkOpen();
+            readCalibrationData();
+        }
+        return calibration;
+    }
 
+    private void checkOpen() throws IOException {
+        if (mDevice == null) {
+            throw new IOException("device is closed");
+        }
     }
 
     /**
-     * Reads the raw (uncompensated) temperature from the sensor
+     * Starts a temperature conversion. The result is ready after {@link #TEMPERATURE_DELAY_MS}.
      *
-     * @return Reads the raw (uncompensated) temperature from the sensor
      * @throws IOException if there was communication problem
      */
-    private int readRawTemp() throws IOException {
+    synchronized void startTemperatureConversion() throws IOException {
+        checkOpen();
+        writeControl(BMP180_READ_TEMPERATURE_CMD);
+    }
 
-        if (lastRawTemp.isValid())
-            return lastRawTemp.val;
+    /**
+     * Reads the raw (uncompensated) temperature of a finished conversion
+     *
+     * @return the raw (uncompensated) temperature
+     * @throws IOException if there was communication problem
+     */
+    synchronized int readRawTemperatureResult() throws IOException {
+        checkOpen();
+        readBlock(BMP180_TEMPERATURE_DATA, 2);
+        return I2cUtils.u16BE(buffer, 0);
+    }
 
-        mDevice.writeRegByte(BMP180_CONTROL, (byte) BMP180_READ_TEMPERATURE_CMD);
-        waitFor(5);
-        int raw = readU16(BMP180_TEMPERATURE_DATA);
+    /**
+     * Starts a pressure conversion in the current mode, or the mode the governor picks.
+     *
+     * @return the mode the conversion was started with
+     * @throws IOException if there was communication problem
+     */
+    @Mode
+    synchronized int startPressureConversion() throws IOException {
+        checkOpen();
+        int mode = governor != null ? governor.selectMode(engine.getPeriodNs()) : this.mode;
+        startPressureConversion(mode);
+        return mode;
+    }
 
-        lastRawTemp.setVal(raw);
-        return raw;
+    /**
+     * Starts a pressure conversion in the given mode, bypassing the current mode and the governor.
+     *
+     * @param mode the oversampling mode
+     * @throws IOException if there was communication problem
+     */
+    synchronized void startPressureConversion(@Mode int mode) throws IOException {
+        checkOpen();
+        writeControl(BMP180_READ_PRESSURE_CMD + (mode << 6));
+        metrics.pressureConverted(mode);
     }
 
     /**
-     * Reads the raw (uncompensated) pressure level from the sensor
+     * Reads the raw (uncompensated) pressure level of a finished conversion
      *
-     * @return the raw (uncompensated) pressure level from the sensor
+     * @param mode the mode the conversion was started with
+     * @return the raw (uncompensated) pressure level
      * @throws IOException if there was communication problem
      */
-    private int readRawPressure() throws IOException {
+    synchronized int readRawPressureResult(@Mode int mode) throws IOException {
+        checkOpen();
+        readBlock(BMP180_PRESSURE_DATA, 3);
+        return I2cUtils.u24BE(buffer, 0) >> (8 - mode);
+    }
 
-        if (lastRawPressure.isValid())
-            return lastRawPressure.val;
+    /**
+     * Returns the conversion time of a pressure measurement in the given mode.
+     *
+     * @param mode the oversampling mode
+     * @return the conversion time in milliseconds
+     */
+    static int pressureDelayMs(@Mode int mode) {
+        return modeDelay[mode];
+    }
 
-        mDevice.writeRegByte(BMP180_CONTROL, (byte) (BMP180_READ_PRESSURE_CMD + (mode << 6)));
-        waitFor(modeDelay[mode]);
-        int msb = mDevice.readRegByte(BMP180_PRESSURE_DATA);
-        int lsb = mDevice.readRegByte(BMP180_PRESSURE_DATA + 1);
-        int xlsb = mDevice.readRegByte(BMP180_PRESSURE_DATA + 2);
-        int raw = ((msb << 16) + (lsb << 8) + xlsb) >> (8 - mode);
+    /**
+     * Returns the maximum conversion time of a pressure measurement in the given mode, from the
+     * datasheet.
+     *
+     * @param mode the oversampling mode
+     * @return the conversion time in nanoseconds
+     */
+    static long pressureConversionNs(@Mode int mode) {
+        return PRESSURE_CONVERSION_NS[mode];
+    }
 
-        lastRawPressure.setVal(raw);
-        return raw;
+    /**
+     * Computes the B5 temperature compensation term, shared by the temperature and pressure
+     * calculations.
+     *
+     * @param UT the raw temperature
+     * @return the B5 term
+     * @throws IOException if the calibration data could not be read
+     */
+    synchronized int computeB5(int UT) throws IOException {
+        Bmp180Calibration calibration = requireCalibration();
+        try {
+            return calibration.computeB5(UT);
+        } catch (ArithmeticException e) {
+            throw implausible("raw temperature " + UT);
+        }
+    }
+
+    private Bmp180Exception.ImplausibleReadingException implausible(String reading) {
+        metrics.implausible();
+        return new Bmp180Exception.ImplausibleReadingException("implausible " + reading);
     }
 
     /**
-     * Returns the temperature in degrees Celsius.
+     * Turns raw readings into a sample.
      *
-     * @return the temperature in degrees Celsius.
-     * @throws IOException if there was communication problem
+     * @param UT   the raw temperature the B5 term was computed from
+     * @param B5   the temperature compensation term, see {@link #computeB5(int)}
+     * @param UP   the raw pressure
+     * @param mode the mode the pressure conversion was started with
+     * @return the compensated sample
+     * @throws IOException if the calibration data could not be read or the reading is
+     *                     implausible
+     */
+    Bmp180Sample compensate(int UT, int B5, int UP, @Mode int mode) throws IOException {
+        return compensate(UT, B5, UP, mode, SystemClock.elapsedRealtimeNanos());
+    }
+
+    /**
+     * Turns raw readings taken at {@code timestamp} into a sample, e.g. when replaying a log.
+     */
+    synchronized Bmp180Sample compensate(int UT, int B5, int UP, @Mode int mode, long timestamp)
+            throws IOException {
+        requireCalibration();
+        long start = System.nanoTime();
+        float temperature = Bmp180Calibration.computeTemperature(B5) / 10.0F;
+        float pressure;
+        try {
+            pressure = calibration.computePressure(B5, UP, mode);
+        } catch (ArithmeticException e) {
+            throw implausible("raw pressure " + UP);
+        }
+        // corrupted transfers must not reach the filters, the governor or the consumers
+        if (!(temperature >= MIN_TEMP_C && temperature <= MAX_TEMP_C)) {
+            throw implausible("temperature " + temperature + " C");
+        }
+        if (!(pressure >= MIN_PRESSURE_HPA * 100 && pressure <= MAX_PRESSURE_HPA * 100)) {
+            throw implausible("pressure " + pressure + " Pa");
+        }
+        // the governor weighs samples by the noise of their mode, so it sees them unfiltered
+        if (governor != null) {
+            governor.onSample(pressure, timestamp, mode);
+        }
+        if (temperatureFilter != null) {
+            temperature = temperatureFilter.apply(temperature);
+        }
+        if (pressureFilter != null) {
+            pressure = pressureFilter.apply(pressure);
+        }
+        float altitude = Altitude.fromPressure(pressure, seaLevelReference.get());
+        metrics.sample(timestamp);
+        metrics.record(Bmp180Metrics.COMPENSATION, System.nanoTime() - start);
+        return new Bmp180Sample(Math.round(pressure), temperature, altitude, timestamp, UT, UP, mode);
+    }
+
+    /**
+     * Starts an asynchronous conversion. The callback is invoked on the conversion thread once
+     * the sample is compensated; no lock is held while the conversion is in flight. Requests
+     * made while a conversion is running are served by that conversion.
+     *
+     * @param callback the callback to deliver the sample to
      */
-    public synchronized float readTemperature() throws IOException {
-        if (lastTemperature.isValid())
-            return lastTemperature.val / 10.0F;
+    public void readAsync(Callback callback) {
+        engine.submit(callback);
+    }
 
-        int UT = readRawTemp();
-        int X1 = ((UT - AC6) * AC5) >> 15;
-        int X2 = (MC << 11) / (X1 + MD);
-        int B5 = X1 + X2;
-        lastTemperature.setVal(((B5 + 8) >> 4));
+    /**
+     * Starts continuous sampling: conversions run back to back and every sample is delivered to
+     * the callback. The temperature is converted once per {@code temperatureInterval} pressure
+     * conversions and reused in between. With an interval of 10 the sample rate is about
+     * 1000 / (pressure conversion time + 5 / 10) Hz:
+     * <ul>
+     * <li>{@link #BMP180_ULTRA_LOW_POWER}: 181 Hz</li>
+     * <li>{@link #BMP180_STANDARD}: 117 Hz</li>
+     * <li>{@link #BMP180_HIGH_RES}: 69 Hz</li>
+     * <li>{@link #BMP180_ULTRA_HIGH_RES}: 37 Hz</li>
+     * </ul>
+     * While sampling continuously the read methods return the latest sample without waiting.
+     * With {@link #setTemperatureTracking(long, float)} the interval is ignored.
+     *
+     * @param temperatureInterval number of pressure conversions per temperature conversion
+     * @param callback            the callback to deliver the samples to, may be null
+     */
+    public void startContinuous(int temperatureInterval, Callback callback) {
+        engine.startContinuous(temperatureInterval, 0, callback);
+    }
 
-        return lastTemperature.val / 10.0F;
+    /**
+     * Starts continuous sampling at a fixed rate. Calling it while sampling changes the rate.
+     *
+     * @param temperatureInterval number of pressure conversions per temperature conversion
+     * @param rateHz              the sampling rate, capped by the conversion time of the mode
+     * @param callback            the callback to deliver the samples to, may be null
+     * @see #startContinuous(int, Callback)
+     */
+    public void startContinuous(int temperatureInterval, float rateHz, Callback callback) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("rateHz must be positive");
+        }
+        engine.startContinuous(temperatureInterval, Math.round(1e9 / rateHz), callback);
     }
 
     /**
-     * Returns the pressure in Pascal.
+     * Reuses the temperature compensation of the last temperature conversion, for single reads
+     * as well as in continuous mode, for as long as it is fresh enough: at most
+     * {@code maxAgeMs}, and less when the temperature changes faster than {@code maxSlope}, so
+     * that the drift between conversions stays below {@code maxSlope * maxAgeMs}. Each skipped
+     * temperature conversion saves 4.5 ms of conversion time and its current. The numbers of
+     * conversions and reuses are in {@link #getMetrics()}.
      *
-     * @return the pressure in Pascal.
+     * @param maxAgeMs the longest time the temperature is reused, 0 to disable tracking and
+     *                 convert the temperature for every single read and once per
+     *                 {@code temperatureInterval} in continuous mode
+     * @param maxSlope the temperature change in degrees Celsius per second up to which the
+     *                 temperature is reused for {@code maxAgeMs}, ignored when tracking is
+     *                 disabled
+     */
+    public void setTemperatureTracking(long maxAgeMs, float maxSlope) {
+        engine.setTemperatureTracking(MILLISECONDS.toNanos(maxAgeMs), maxSlope);
+    }
+
+    /**
+     * Stops continuous sampling after the conversion in flight.
+     */
+    public void stopContinuous() {
+        engine.stopContinuous();
+    }
+
+    /**
+     * Returns the latest published sample without touching the bus or taking any lock.
+     * Combined with {@link #startContinuous(int, Callback)} this lets any number of threads
+     * poll the sensor wait-free.
+     *
+     * @return the latest sample, or null if no sample has been taken yet
+     */
+    public Bmp180Sample getLatestSample() {
+        return lastSample;
+    }
+
+    /**
+     * Returns the latest sample and, unless sampling continuously, starts a new conversion in
+     * the background. Blocks only when no sample has been taken yet.
+     *
+     * @return the latest sample
      * @throws IOException if there was communication problem
      */
-    public synchronized int readPressure() throws IOException {
-        if (lastPressure.isValid())
-            return lastPressure.val;
-        long p;
-        int UT = readRawTemp();
-        int UP = readRawPressure();
-
-        //Temperature Calculations
-        int X1 = ((UT - AC6) * AC5) >> 15;
-        int X2 = (MC << 11) / (X1 + MD);
-        int B5 = X1 + X2;
-
-        lastTemperature.setVal((B5 + 8) >> 4);
-
-        //Pressure Calculations
-        int B6 = B5 - 4000;
-        X1 = (B2 * (B6 * B6) >> 12) >> 11;
-        X2 = (AC2 * B6) >> 11;
-        int X3 = X1 + X2;
-        int B3 = (((AC1 * 4 + X3) << mode) + 2) / 4;
-
-        X1 = (AC3 * B6) >> 13;
-        X2 = (B1 * ((B6 * B6) >> 12)) >> 16;
-        X3 = ((X1 + X2) + 2) >> 2;
-        long B4 = (AC4 * (X3 + 32768)) >> 15;
-        long B7 = (UP - B3) * (50000 >> mode);
-
-        if (B7 < 0x80000000) {
-            p = (B7 * 2) / B4;
-        } else {
-            p = (B7 / B4) * 2;
+    public Bmp180Sample readLatest() throws IOException {
+        Bmp180Sample sample = lastSample;
+        if (sample == null) {
+            return readSample();
+        }
+        if (!engine.isContinuous()) {
+            engine.submit(null);
         }
+        return sample;
+    }
+
+    /**
+     * Returns a sample not older than {@link #MIN_PERIOD_MS}, waiting for a new conversion
+     * when needed. The calling thread waits, but no lock is held while it does.
+     * <p>
+     * While sampling continuously the latest sample is returned as long as it is not older than
+     * a few sampling periods. An older one means the sampling is failing: the last error is
+     * thrown, e.g. a {@link Bmp180Exception.CircuitOpenException} while the bus recovers.
+     *
+     * @return the sample
+     * @throws IOException if there was communication problem
+     */
+    public Bmp180Sample readSample() throws IOException {
+        Bmp180Sample sample = lastSample;
+        boolean continuous = engine.isContinuous();
+        long maxAgeNs = continuous ? MAX_AGE_PERIODS * Math.max(engine.getPeriodNs(),
+                MILLISECONDS.toNanos(TEMPERATURE_DELAY_MS + pressureDelayMs(BMP180_ULTRA_HIGH_RES)))
+                : MILLISECONDS.toNanos(MIN_PERIOD_MS);
+        if (sample != null && SystemClock.elapsedRealtimeNanos() - sample.getTimestamp() < maxAgeNs) {
+            metrics.cacheHit();
+            return sample;
+        }
+        IOException error = engine.getLastError();
+        if (continuous && error != null) {
+            throw error;
+        }
+        metrics.cacheMiss();
+        BlockingCallback callback = new BlockingCallback();
+        engine.submit(callback);
+        return callback.await();
+    }
+
+    void onSample(Bmp180Sample sample) {
+        lastSample = sample;
+        for (Callback listener : listeners) {
+            try {
+                listener.onSample(sample);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "onSample: ", e);
+            }
+        }
+    }
+
+    /**
+     * Adds a listener that receives every sample the device takes, whoever requested it, on the
+     * conversion thread. Listeners must not block.
+     *
+     * @param listener the listener to add
+     */
+    public void addSampleListener(Callback listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addSampleListener(Callback)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeSampleListener(Callback listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the calibration read from the sensor.
+     *
+     * @return the calibration, or null if it could not be read
+     */
+    public synchronized Bmp180Calibration getCalibration() {
+        return calibration;
+    }
 
-        X1 = (int) ((p >> 8) * (p >> 8));
-        X1 = (X1 * 3038) >> 16;
-        X2 = (int) (-7357 * p) >> 16;
-        p = p + ((X1 + X2 + 3791) >> 4);
+    /**
+     * Returns the temperature in degrees Celsius.
+     *
+     * @return the temperature in degrees Celsius.
+     * @throws IOException if there was communication problem
+     */
+    public float readTemperature() throws IOException {
+        return readSample().getTemperature();
+    }
 
-        lastPressure.setVal((int) p);
-        return lastPressure.val;
+    /**
+     * Returns the pressure in Pascal.
+     *
+     * @return the pressure in Pascal.
+     * @throws IOException if there was communication problem
+     */
+    public int readPressure() throws IOException {
+        return readSample().getPressure();
     }
 
     /**
@@ -250,9 +653,8 @@ public class Bmp180 implements AutoCloseable {
      * @return the barometric altitude above sea level in meters.
      * @throws IOException if there was communication problem
      */
-    public synchronized float readAltitude() throws IOException {
-        float pressure = readPressure();
-        return (float) (44330.0 * (1.0 - Math.pow(pressure / standardSeaLevelPressure, POW_FACT)));
+    public float readAltitude() throws IOException {
+        return readSample().getAltitude();
     }
 
     /**
@@ -261,32 +663,107 @@ public class Bmp180 implements AutoCloseable {
      * @return the array with: the pressure in Pascal,the temperature in degrees Celsius,the barometric altitude above sea level in meters
      * @throws IOException if there was communication problem
      */
-    public synchronized float[] readAllValues() throws IOException {
-        int pressure = readPressure();
-        float temperature = readTemperature();
-        float altitude = readAltitude();
-        return new float[]{pressure, temperature, altitude};
+    public float[] readAllValues() throws IOException {
+        float[] values = new float[3];
+        readInto(values, 0);
+        return values;
+    }
+
+    /**
+     * Allocation free variant of {@link #readAllValues()}: stores the pressure in Pascal, the
+     * temperature in degrees Celsius and the barometric altitude above sea level in meters into
+     * {@code dst}, starting at {@code offset}.
+     *
+     * @param dst    the destination array, at least {@code offset + 3} long
+     * @param offset the index of the first value
+     * @throws IOException if there was communication problem
+     */
+    public void readInto(float[] dst, int offset) throws IOException {
+        readSample().copyTo(dst, offset);
+    }
+
+    /**
+     * Let a governor choose the oversampling mode of every pressure conversion instead of the
+     * fixed mode set with {@link #setMode(int)}. The conversions per mode are in
+     * {@link #getMetrics()}.
+     *
+     * @param governor the governor, or null to go back to the fixed mode
+     */
+    public synchronized void setGovernor(Bmp180Governor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Set the filter applied to the pressure before it is published; the altitude is derived
+     * from the filtered pressure. Fast sampling in {@link #BMP180_ULTRA_LOW_POWER} mode through
+     * a filter can match the noise of the slower oversampling modes, as the filter comparison of
+     * the benchmark in the test sources shows.
+     *
+     * @param filter the filter, or null to publish raw values
+     */
+    public synchronized void setPressureFilter(Bmp180Filter filter) {
+        if (filter != null) {
+            filter.reset();
+        }
+        pressureFilter = filter;
     }
 
     /**
-     * Set the standard sea level pressure for altitude calculation
+     * Set the filter applied to the temperature before it is published.
+     *
+     * @param filter the filter, or null to publish raw values
+     */
+    public synchronized void setTemperatureFilter(Bmp180Filter filter) {
+        if (filter != null) {
+            filter.reset();
+        }
+        temperatureFilter = filter;
+    }
+
+    /**
+     * Set the standard sea level pressure for altitude calculation. Does not wait for a
+     * conversion in flight. Any value is taken, unlike {@link SeaLevelReference#set(float)},
+     * which rejects values outside {@link SeaLevelReference#MIN_PRESSURE} to
+     * {@link SeaLevelReference#MAX_PRESSURE}.
      *
      * @param standardSeaLevelPressure the standard sea level pressure for your location
      */
-    public synchronized void setStandardSeaLevelPressure(int standardSeaLevelPressure) {
-        this.standardSeaLevelPressure = standardSeaLevelPressure;
+    public void setStandardSeaLevelPressure(int standardSeaLevelPressure) {
+        seaLevelReference.setUnchecked(standardSeaLevelPressure);
     }
 
-    private static void waitFor(long howMuch) {
-        try {
-            MILLISECONDS.sleep(howMuch);
-        } catch (InterruptedException e) {
-            Log.e(TAG, "waitFor error: ", e);
+    /**
+     * Makes altitudes refer to the given sea level pressure reference, e.g. one that several
+     * devices share and a QNH source keeps up to date.
+     *
+     * @param reference the sea level pressure reference
+     */
+    public void setSeaLevelReference(SeaLevelReference reference) {
+        if (reference == null) {
+            throw new NullPointerException();
         }
+        seaLevelReference = reference;
+    }
+
+    public SeaLevelReference getSeaLevelReference() {
+        return seaLevelReference;
+    }
+
+    /**
+     * Sets the sea level pressure so that the current pressure corresponds to the known
+     * altitude.
+     *
+     * @param knownAltitude the altitude of the sensor in meters
+     * @return the new sea level pressure in Pascal
+     * @throws IOException if there was communication problem
+     */
+    public float zeroAltitude(float knownAltitude) throws IOException {
+        return seaLevelReference.zero(knownAltitude, readSample().getPressure());
     }
 
     @Override
     public synchronized void close() throws IOException {
+        engine.shutdown();
         if (mDevice != null) {
             try {
                 mDevice.close();
@@ -295,20 +772,35 @@ public class Bmp180 implements AutoCloseable {
             }
         }
     }
-}
 
-class LastRead {
-    private static final int MIN_PERIOD_US = 50;
-    long time;
-    int val;
+    private static class BlockingCallback implements Callback {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Bmp180Sample sample;
+        private IOException error;
 
-    boolean isValid() {
-        return System.currentTimeMillis() - time < MIN_PERIOD_US;
-    }
+        @Override
+        public void onSample(Bmp180Sample sample) {
+            this.sample = sample;
+            done.countDown();
+        }
 
-    void setVal(int val) {
-        this.val = val;
-        time = System.currentTimeMillis();
-    }
+        @Override
+        public void onError(IOException e) {
+            error = e;
+            done.countDown();
+        }
 
-}
\ No newline at end of file
+        Bmp180Sample await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for conversion");
+            }
+            if (error != null) {
+                throw error;
+            }
+            return sample;
+        }
+    }
+}
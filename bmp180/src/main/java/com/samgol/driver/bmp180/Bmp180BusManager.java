@@ -0,0 +1,274 @@
+package com.samgol.driver.bmp180;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.things.pio.PeripheralManagerService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many sensors spread over several I2C buses, directly attached or behind multiplexers.
+ * Each bus gets one worker thread that runs the conversions of all its sensors: while one
+ * sensor converts, the worker is free to start or read the others, so the conversion waits
+ * overlap instead of adding up. Sensors on a bus with multiplexers, behind one of them or
+ * attached directly, take turns on the bus through one lock per bus, and every other
+ * multiplexer is disconnected before one is accessed.
+ */
+public class Bmp180BusManager implements AutoCloseable {
+    private static final String TAG = Bmp180BusManager.class.getSimpleName();
+
+    /**
+     * Receives the samples of all managed sensors, on the worker thread of their bus.
+     */
+    public interface Listener {
+        void onSample(Bmp180 device, Bmp180Sample sample);
+
+        void onError(Bmp180 device, IOException e);
+    }
+
+    private final Map<String, ScheduledExecutorService> mWorkers = new HashMap<>();
+    private final Map<String, Bmp180Transport> mSharedTransports = new HashMap<>();
+    private final Map<String, I2cMultiplexer> mMultiplexers = new HashMap<>();
+    private final Map<String, MultiplexedBus> mBuses = new HashMap<>();
+    private final List<Bmp180> mDevices = new ArrayList<>();
+
+    private final AtomicLong mSampleCount = new AtomicLong();
+    private Bmp180CalibrationCache mCalibrationCache;
+    private SeaLevelReference mSeaLevelReference;
+    private long mStartedAt;
+    private boolean mRunning;
+    private boolean mClosed;
+
+    /**
+     * Adds a sensor attached directly to the given bus.
+     *
+     * @param bus I2C bus the sensor is connected to.
+     * @return the sensor
+     * @throws IOException if the bus could not be opened
+     */
+    public synchronized Bmp180 addDevice(String bus) throws IOException {
+        checkOpen();
+        PeripheralManagerService manager = new PeripheralManagerService();
+        return addDevice(bus, new MultiplexedTransport(multiplexedBus(bus), null, 0,
+                sharedTransport(manager, bus)), bus);
+    }
+
+    /**
+     * Adds a sensor behind one channel of a multiplexer on the given bus.
+     *
+     * @param bus        I2C bus the multiplexer is connected to.
+     * @param muxAddress the address of the multiplexer
+     * @param channel    the multiplexer channel the sensor is connected to, 0 to 7
+     * @return the sensor
+     * @throws IOException if the bus could not be opened
+     */
+    public synchronized Bmp180 addDevice(String bus, int muxAddress, int channel) throws IOException {
+        checkOpen();
+        PeripheralManagerService manager = new PeripheralManagerService();
+        String muxKey = bus + "@" + Integer.toHexString(muxAddress);
+        MultiplexedBus multiplexedBus = multiplexedBus(bus);
+        I2cMultiplexer multiplexer = mMultiplexers.get(muxKey);
+        if (multiplexer == null) {
+            multiplexer = multiplexedBus.add(manager.openI2cDevice(bus, muxAddress));
+            mMultiplexers.put(muxKey, multiplexer);
+        }
+        return addDevice(bus, new MultiplexedTransport(multiplexedBus, multiplexer, channel,
+                sharedTransport(manager, bus)), muxKey + "/" + channel);
+    }
+
+    /**
+     * Adds a sensor reached through the given transport, e.g. a {@link Bmp180Simulator}.
+     *
+     * @param bus       the name of the bus, sensors on the same bus share a worker
+     * @param transport the transport to talk to the sensor through
+     * @return the sensor
+     */
+    public synchronized Bmp180 addDevice(String bus, Bmp180Transport transport) {
+        return addDevice(bus, transport, null);
+    }
+
+    private Bmp180 addDevice(String bus, Bmp180Transport transport, String calibrationKey) {
+        checkOpen();
+        Bmp180 device = new Bmp180(transport, worker(bus), mCalibrationCache, calibrationKey);
+        if (mSeaLevelReference != null) {
+            device.setSeaLevelReference(mSeaLevelReference);
+        }
+        mDevices.add(device);
+        return device;
+    }
+
+    /**
+     * Sets the cache the calibration of sensors added from now on is taken from and stored in.
+     * Sensors are keyed by bus, multiplexer and channel.
+     *
+     * @param cache the calibration cache, or null to always read the calibration
+     */
+    public synchronized void setCalibrationCache(Bmp180CalibrationCache cache) {
+        mCalibrationCache = cache;
+    }
+
+    /**
+     * Makes the altitudes of all sensors, present and added later, refer to one sea level
+     * pressure reference, so one QNH update applies to all of them.
+     *
+     * @param reference the sea level pressure reference
+     */
+    public synchronized void setSeaLevelReference(SeaLevelReference reference) {
+        mSeaLevelReference = reference;
+        for (Bmp180 device : mDevices) {
+            device.setSeaLevelReference(reference);
+        }
+    }
+
+    public synchronized List<Bmp180> getDevices() {
+        return Collections.unmodifiableList(new ArrayList<>(mDevices));
+    }
+
+    /**
+     * Starts continuous sampling on every sensor.
+     *
+     * @param temperatureInterval number of pressure conversions per temperature conversion
+     * @param listener            the listener to deliver the samples to, may be null
+     */
+    public synchronized void start(int temperatureInterval, final Listener listener) {
+        checkOpen();
+        mSampleCount.set(0);
+        mStartedAt = SystemClock.elapsedRealtimeNanos();
+        mRunning = true;
+        for (final Bmp180 device : mDevices) {
+            device.startContinuous(temperatureInterval, new Bmp180.Callback() {
+                @Override
+                public void onSample(Bmp180Sample sample) {
+                    mSampleCount.incrementAndGet();
+                    if (listener != null) {
+                        listener.onSample(device, sample);
+                    }
+                }
+
+                @Override
+                public void onError(IOException e) {
+                    if (listener != null) {
+                        listener.onError(device, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops sampling on every sensor.
+     */
+    public synchronized void stop() {
+        for (Bmp180 device : mDevices) {
+            device.stopContinuous();
+        }
+        mRunning = false;
+    }
+
+    /**
+     * Returns the number of samples taken by all sensors since {@link #start(int, Listener)}.
+     *
+     * @return the number of samples taken by all sensors.
+     */
+    public long getSampleCount() {
+        return mSampleCount.get();
+    }
+
+    /**
+     * Returns the aggregate sample rate of all sensors since {@link #start(int, Listener)}.
+     *
+     * @return the aggregate sample rate in samples per second.
+     */
+    public synchronized float getThroughput() {
+        if (!mRunning) {
+            return 0;
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - mStartedAt;
+        return elapsed > 0 ? mSampleCount.get() * 1e9f / elapsed : 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        stop();
+        for (Bmp180 device : mDevices) {
+            closeQuietly(device);
+        }
+        mDevices.clear();
+        for (Bmp180Transport transport : mSharedTransports.values()) {
+            closeQuietly(transport);
+        }
+        mSharedTransports.clear();
+        for (MultiplexedBus multiplexedBus : mBuses.values()) {
+            closeQuietly(multiplexedBus);
+        }
+        mBuses.clear();
+        mMultiplexers.clear();
+        for (ScheduledExecutorService worker : mWorkers.values()) {
+            worker.shutdownNow();
+        }
+        mWorkers.clear();
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("bus manager is closed");
+        }
+    }
+
+    private MultiplexedBus multiplexedBus(String bus) {
+        MultiplexedBus multiplexedBus = mBuses.get(bus);
+        if (multiplexedBus == null) {
+            multiplexedBus = new MultiplexedBus();
+            mBuses.put(bus, multiplexedBus);
+        }
+        return multiplexedBus;
+    }
+
+    private Bmp180Transport sharedTransport(PeripheralManagerService manager, String bus)
+            throws IOException {
+        Bmp180Transport shared = mSharedTransports.get(bus);
+        if (shared == null) {
+            shared = new I2cDeviceTransport(manager.openI2cDevice(bus, Bmp180.BMP180_ADDRESS));
+            mSharedTransports.put(bus, shared);
+        }
+        return shared;
+    }
+
+    private ScheduledExecutorService worker(final String bus) {
+        ScheduledExecutorService worker = mWorkers.get(bus);
+        if (worker == null) {
+            worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Bmp180-" + bus);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mWorkers.put(bus, worker);
+        }
+        return worker;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            Log.e(TAG, "close error: ", e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.samgol.driver.bmp180;
+
+/**
+ * The factory calibration of one sensor together with the coefficients derived from it.
+ * The derived terms are computed once so the per-sample compensation only does the parts
+ * that depend on the raw readings.
+ */
+public final class Bmp180Calibration {
+    /**
+     * Size of the calibration EEPROM in bytes.
+     */
+    public static final int LENGTH = 22;
+
+    final int AC1;
+    final int AC2;
+    final int AC3;
+    final int AC4;
+    final int AC5;
+    final int AC6;
+    final int B1;
+    final int B2;
+    final int MB;
+    final int MC;
+    final int MD;
+
+    // derived coefficients
+    private final int mc11;
+    private final int ac1x4;
+    private final int[] b7Scale = new int[4];
+
+    public Bmp180Calibration(int AC1, int AC2, int AC3, int AC4, int AC5, int AC6,
+                             int B1, int B2, int MB, int MC, int MD) {
+        this.AC1 = AC1;
+        this.AC2 = AC2;
+        this.AC3 = AC3;
+        this.AC4 = AC4;
+        this.AC5 = AC5;
+        this.AC6 = AC6;
+        this.B1 = B1;
+        this.B2 = B2;
+        this.MB = MB;
+        this.MC = MC;
+        this.MD = MD;
+
+        mc11 = MC << 11;
+        ac1x4 = AC1 * 4;
+        for (int mode = 0; mode < b7Scale.length; mode++) {
+            b7Scale[mode] = 50000 >> mode;
+        }
+    }
+
+    /**
+     * Decodes the calibration EEPROM as read from register 0xAA on.
+     *
+     * @param eeprom the {@link #LENGTH} bytes of the EEPROM
+     * @param offset the index of the first byte
+     * @return the calibration
+     */
+    public static Bmp180Calibration fromEeprom(byte[] eeprom, int offset) {
+        return new Bmp180Calibration(
+                I2cUtils.s16BE(eeprom, offset),
+                I2cUtils.s16BE(eeprom, offset + 2),
+                I2cUtils.s16BE(eeprom, offset + 4),
+                I2cUtils.u16BE(eeprom, offset + 6),
+                I2cUtils.u16BE(eeprom, offset + 8),
+                I2cUtils.u16BE(eeprom, offset + 10),
+                I2cUtils.s16BE(eeprom, offset + 12),
+                I2cUtils.s16BE(eeprom, offset + 14),
+                I2cUtils.s16BE(eeprom, offset + 16),
+                I2cUtils.s16BE(eeprom, offset + 18),
+                I2cUtils.s16BE(eeprom, offset + 20));
+    }
+
+    /**
+     * Checks the calibration EEPROM as the datasheet suggests: no word reads 0x0000 or 0xFFFF,
+     * which is what a failed or cut short transfer returns.
+     *
+     * @param eeprom the {@link #LENGTH} bytes of the EEPROM
+     * @param offset the index of the first byte
+     * @return true if the EEPROM looks intact
+     */
+    public static boolean isValid(byte[] eeprom, int offset) {
+        for (int i = offset; i < offset + LENGTH; i += 2) {
+            int word = I2cUtils.u16BE(eeprom, i);
+            if (word == 0 || word == 0xFFFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the calibration in the EEPROM layout, the inverse of {@link #fromEeprom(byte[], int)}.
+     *
+     * @param eeprom the destination, at least {@link #LENGTH} bytes from {@code offset}
+     * @param offset the index of the first byte
+     */
+    public void toEeprom(byte[] eeprom, int offset) {
+        int[] words = {AC1, AC2, AC3, AC4, AC5, AC6, B1, B2, MB, MC, MD};
+        for (int i = 0; i < words.length; i++) {
+            eeprom[offset + 2 * i] = (byte) (words[i] >> 8);
+            eeprom[offset + 2 * i + 1] = (byte) words[i];
+        }
+    }
+
+    /**
+     * Computes the B5 temperature compensation term, shared by the temperature and pressure
+     * calculations.
+     *
+     * @param UT the raw temperature
+     * @return the B5 term
+     */
+    public int computeB5(int UT) {
+        int X1 = ((UT - AC6) * AC5) >> 15;
+        int X2 = mc11 / (X1 + MD);
+        return X1 + X2;
+    }
+
+    /**
+     * Returns the temperature in tenths of degrees Celsius.
+     *
+     * @param B5 the temperature compensation term
+     * @return the temperature in tenths of degrees Celsius.
+     */
+    public static int computeTemperature(int B5) {
+        return (B5 + 8) >> 4;
+    }
+
+    /**
+     * Returns the pressure in Pascal.
+     *
+     * @param B5   the temperature compensation term
+     * @param UP   the raw pressure
+     * @param mode the mode the pressure conversion was started with
+     * @return the pressure in Pascal.
+     */
+    public int computePressure(int B5, int UP, @Bmp180.Mode int mode) {
+        return compensatePressure(computeB3(B5, mode), computeB4(B5), UP, mode);
+    }
+
+    /**
+     * Returns the B3 term, which depends on the temperature and the mode only.
+     */
+    int computeB3(int B5, @Bmp180.Mode int mode) {
+        int B6 = B5 - 4000;
+        int X1 = (B2 * (B6 * B6) >> 12) >> 11;
+        int X2 = (AC2 * B6) >> 11;
+        int X3 = X1 + X2;
+        return (((ac1x4 + X3) << mode) + 2) / 4;
+    }
+
+    /**
+     * Returns the B4 term, which depends on the temperature only.
+     */
+    int computeB4(int B5) {
+        int B6 = B5 - 4000;
+        int X1 = (AC3 * B6) >> 13;
+        int X2 = (B1 * ((B6 * B6) >> 12)) >> 16;
+        int X3 = ((X1 + X2) + 2) >> 2;
+        return (AC4 * (X3 + 32768)) >> 15;
+    }
+
+    /**
+     * Returns the pressure in Pascal from the temperature dependent terms, so they can be reused
+     * for every pressure conversion taken at the same temperature.
+     */
+    int compensatePressure(int B3, int B4, int UP, @Bmp180.Mode int mode) {
+        long p;
+        // B7 is an unsigned 32 bit value in the datasheet; an int product or an int bound
+        // (0x80000000 is negative in Java) would lose its top bit
+        long B7 = (long) (UP - B3) * b7Scale[mode];
+
+        if (B7 < 0x80000000L) {
+            p = (B7 * 2) / B4;
+        } else {
+            p = (B7 / B4) * 2;
+        }
+
+        int X1 = (int) ((p >> 8) * (p >> 8));
+        X1 = (X1 * 3038) >> 16;
+        int X2 = (int) (-7357 * p) >> 16;
+        p = p + ((X1 + X2 + 3791) >> 4);
+
+        return (int) p;
+    }
+}
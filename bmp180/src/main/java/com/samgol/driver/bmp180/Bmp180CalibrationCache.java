@@ -0,0 +1,142 @@
+package com.samgol.driver.bmp180;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the calibration EEPROM of sensors in files so a restarted driver does not have to read it
+ * again. Entries are keyed by the bus name (plus the multiplexer channel for multiplexed sensors)
+ * and carry a CRC32 over the key and the EEPROM; a damaged or foreign entry is ignored.
+ * <p>
+ * {@link Bmp180} still spot-reads a few calibration registers on start and falls back to a full
+ * read when they disagree with the cached copy, so a swapped sensor is picked up.
+ */
+public class Bmp180CalibrationCache {
+    private static final String TAG = Bmp180CalibrationCache.class.getSimpleName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FILE_LENGTH = Bmp180Calibration.LENGTH + 4;
+
+    private final File directory;
+    private final Map<String, byte[]> entries = new HashMap<>();
+
+    /**
+     * Creates a cache stored in the given directory, e.g. {@code context.getFilesDir()}.
+     *
+     * @param directory the directory to keep the entries in
+     */
+    public Bmp180CalibrationCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached calibration EEPROM for the key.
+     *
+     * @param key the bus the sensor is connected to
+     * @return a copy of the {@link Bmp180Calibration#LENGTH} EEPROM bytes, or null if none is
+     * cached or the entry is damaged
+     */
+    public synchronized byte[] get(String key) {
+        byte[] eeprom = entries.get(key);
+        if (eeprom == null) {
+            eeprom = load(key);
+            if (eeprom == null) {
+                return null;
+            }
+            entries.put(key, eeprom);
+        }
+        return eeprom.clone();
+    }
+
+    /**
+     * Stores the calibration EEPROM for the key.
+     *
+     * @param key    the bus the sensor is connected to
+     * @param eeprom the {@link Bmp180Calibration#LENGTH} EEPROM bytes
+     */
+    public synchronized void put(String key, byte[] eeprom) {
+        if (!Bmp180Calibration.isValid(eeprom, 0)) {
+            throw new IllegalArgumentException("invalid calibration data");
+        }
+        byte[] copy = new byte[Bmp180Calibration.LENGTH];
+        System.arraycopy(eeprom, 0, copy, 0, copy.length);
+        entries.put(key, copy);
+        File file = file(key);
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temporary);
+            try {
+                out.write(copy);
+                int crc = checksum(key, copy);
+                out.write(new byte[]{(byte) (crc >> 24), (byte) (crc >> 16), (byte) (crc >> 8),
+                        (byte) crc});
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            // the rename replaces the entry atomically, a crash leaves either the old or the new
+            if (!temporary.renameTo(file)) {
+                throw new IOException("could not rename " + temporary);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "put: ", e);
+        }
+    }
+
+    /**
+     * Removes the entry for the key.
+     *
+     * @param key the bus the sensor is connected to
+     */
+    public synchronized void remove(String key) {
+        entries.remove(key);
+        if (!file(key).delete()) {
+            Log.d(TAG, "remove: no entry for " + key);
+        }
+    }
+
+    private byte[] load(String key) {
+        File file = file(key);
+        if (file.length() != FILE_LENGTH) {
+            return null;
+        }
+        byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+        int crc;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(eeprom);
+                crc = in.readInt();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "load: ", e);
+            return null;
+        }
+        if (crc != checksum(key, eeprom) || !Bmp180Calibration.isValid(eeprom, 0)) {
+            Log.w(TAG, "load: discarding damaged entry for " + key);
+            return null;
+        }
+        return eeprom;
+    }
+
+    private File file(String key) {
+        return new File(directory, "bmp180-" + key.replaceAll("[^A-Za-z0-9._-]", "_") + ".cal");
+    }
+
+    private static int checksum(String key, byte[] eeprom) {
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes(UTF_8));
+        crc.update(eeprom, 0, Bmp180Calibration.LENGTH);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,145 @@
+package com.samgol.driver.bmp180;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compensates raw readings in bulk, e.g. logs collected from many devices. The results are bit
+ * for bit those of {@link Bmp180Calibration}. The temperature dependent terms are computed once
+ * per run of equal raw temperatures, which is what continuous sampling records, so the inner
+ * loop is the raw pressure part of the compensation and the altitude table lookup.
+ * <p>
+ * All arrays are indexed from {@code offset} to {@code offset + length}; the temperature and
+ * altitude outputs may be null when they are not needed.
+ */
+public final class Bmp180Compensator {
+
+    // below this many samples per task splitting costs more than it gains
+    private static final int SPLIT_THRESHOLD = 8192;
+
+    private Bmp180Compensator() {
+    }
+
+    /**
+     * Compensates a batch of samples taken in one mode on the calling thread.
+     *
+     * @param calibration      the calibration of the sensor that took the samples
+     * @param mode             the mode of the pressure conversions
+     * @param rawTemperature   the raw temperatures
+     * @param rawPressure      the raw pressures
+     * @param offset           the index of the first sample
+     * @param length           the number of samples
+     * @param pressure         receives the pressures in Pascal
+     * @param temperature      receives the temperatures in degrees Celsius, or null
+     * @param altitude         receives the altitudes in meters, or null
+     * @param seaLevelPressure the sea level pressure the altitudes refer to, in Pascal
+     */
+    public static void compensate(Bmp180Calibration calibration, @Bmp180.Mode int mode,
+                                  int[] rawTemperature, int[] rawPressure, int offset, int length,
+                                  int[] pressure, float[] temperature, float[] altitude,
+                                  float seaLevelPressure) {
+        checkBounds(offset, length, rawTemperature.length, rawPressure.length, pressure.length,
+                temperature != null ? temperature.length : Integer.MAX_VALUE,
+                altitude != null ? altitude.length : Integer.MAX_VALUE);
+        if (length == 0) {
+            return;
+        }
+        int end = offset + length;
+        int UT = rawTemperature[offset];
+        int B5 = calibration.computeB5(UT);
+        int B3 = calibration.computeB3(B5, mode);
+        int B4 = calibration.computeB4(B5);
+        float t = Bmp180Calibration.computeTemperature(B5) / 10.0F;
+        for (int i = offset; i < end; i++) {
+            if (rawTemperature[i] != UT) {
+                UT = rawTemperature[i];
+                B5 = calibration.computeB5(UT);
+                B3 = calibration.computeB3(B5, mode);
+                B4 = calibration.computeB4(B5);
+                t = Bmp180Calibration.computeTemperature(B5) / 10.0F;
+            }
+            int p = calibration.compensatePressure(B3, B4, rawPressure[i], mode);
+            pressure[i] = p;
+            if (temperature != null) {
+                temperature[i] = t;
+            }
+            if (altitude != null) {
+                altitude[i] = Altitude.fromPressure(p, seaLevelPressure);
+            }
+        }
+    }
+
+    /**
+     * Compensates a batch of samples taken in one mode, split across the threads of
+     * {@code pool} when it is large enough to benefit. Returns once every sample is done.
+     *
+     * @param pool the pool to run on
+     * @see #compensate(Bmp180Calibration, int, int[], int[], int, int, int[], float[], float[], float)
+     */
+    public static void compensate(ForkJoinPool pool, Bmp180Calibration calibration,
+                                  @Bmp180.Mode int mode, int[] rawTemperature, int[] rawPressure,
+                                  int offset, int length, int[] pressure, float[] temperature,
+                                  float[] altitude, float seaLevelPressure) {
+        checkBounds(offset, length, rawTemperature.length, rawPressure.length, pressure.length,
+                temperature != null ? temperature.length : Integer.MAX_VALUE,
+                altitude != null ? altitude.length : Integer.MAX_VALUE);
+        pool.invoke(new Task(calibration, mode, rawTemperature, rawPressure, offset, length,
+                pressure, temperature, altitude, seaLevelPressure));
+    }
+
+    private static void checkBounds(int offset, int length, int... sizes) {
+        if (offset < 0 || length < 0) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+        }
+        for (int size : sizes) {
+            if (offset > size - length) {
+                throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                        + ", array length " + size);
+            }
+        }
+    }
+
+    private static final class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Bmp180Calibration calibration;
+        private final int mode;
+        private final int[] rawTemperature;
+        private final int[] rawPressure;
+        private final int offset;
+        private final int length;
+        private final int[] pressure;
+        private final float[] temperature;
+        private final float[] altitude;
+        private final float seaLevelPressure;
+
+        Task(Bmp180Calibration calibration, int mode, int[] rawTemperature, int[] rawPressure,
+             int offset, int length, int[] pressure, float[] temperature, float[] altitude,
+             float seaLevelPressure) {
+            this.calibration = calibration;
+            this.mode = mode;
+            this.rawTemperature = rawTemperature;
+            this.rawPressure = rawPressure;
+            this.offset = offset;
+            this.length = length;
+            this.pressure = pressure;
+            this.temperature = temperature;
+            this.altitude = altitude;
+            this.seaLevelPressure = seaLevelPressure;
+        }
+
+        @Override
+        protected void compute() {
+            if (length <= SPLIT_THRESHOLD) {
+                compensate(calibration, mode, rawTemperature, rawPressure, offset, length,
+                        pressure, temperature, altitude, seaLevelPressure);
+                return;
+            }
+            int half = length / 2;
+            invokeAll(new Task(calibration, mode, rawTemperature, rawPressure, offset, half,
+                            pressure, temperature, altitude, seaLevelPressure),
+                    new Task(calibration, mode, rawTemperature, rawPressure, offset + half,
+                            length - half, pressure, temperature, altitude, seaLevelPressure));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+
+/**
+ * A failure of the sensor or of the bus it is on, after the driver gave up recovering from it.
+ * The subclasses tell apart why no sample could be delivered.
+ */
+public class Bmp180Exception extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public Bmp180Exception(String message) {
+        super(message);
+    }
+
+    public Bmp180Exception(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * The bus transfer was not attempted because the circuit breaker of the device is open after
+     * repeated failures.
+     */
+    public static class CircuitOpenException extends Bmp180Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterMs;
+
+        public CircuitOpenException(String message, long retryAfterMs) {
+            super(message);
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        /**
+         * Returns how long until the breaker lets a transfer through again.
+         *
+         * @return the time in milliseconds
+         */
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    /**
+     * The sensor answered, but the compensated reading lies outside what the sensor can measure,
+     * which points to corrupted data.
+     */
+    public static class ImplausibleReadingException extends Bmp180Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ImplausibleReadingException(String message) {
+            super(message);
+        }
+    }
+}
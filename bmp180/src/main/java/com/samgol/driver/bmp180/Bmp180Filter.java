@@ -0,0 +1,184 @@
+package com.samgol.driver.bmp180;
+
+/**
+ * A digital filter applied to every sample between compensation and publication. Filters keep
+ * their history in primitive ring buffers allocated up front, so filtering never allocates.
+ * A filter instance is stateful and must only be installed on one channel of one device.
+ *
+ * @see Bmp180#setPressureFilter(Bmp180Filter)
+ * @see Bmp180#setTemperatureFilter(Bmp180Filter)
+ */
+public abstract class Bmp180Filter {
+
+    /**
+     * Feeds one value through the filter.
+     *
+     * @param value the new value
+     * @return the filtered value
+     */
+    public abstract float apply(float value);
+
+    /**
+     * Forgets the history.
+     */
+    public abstract void reset();
+
+    /**
+     * Returns the delay the filter adds, in samples.
+     *
+     * @return the group delay in samples.
+     */
+    public abstract float getDelay();
+
+    /**
+     * Averages the last {@code length} values. Noise drops by the square root of the length.
+     *
+     * @param length the number of values to average
+     * @return the filter
+     */
+    public static Bmp180Filter movingAverage(int length) {
+        return new MovingAverage(length);
+    }
+
+    /**
+     * First order IIR filter {@code y += alpha * (x - y)}.
+     *
+     * @param alpha the weight of the new value, between 0 exclusive and 1 inclusive
+     * @return the filter
+     */
+    public static Bmp180Filter exponential(float alpha) {
+        return new Exponential(alpha);
+    }
+
+    /**
+     * Returns the median of the last {@code length} values, rejecting isolated spikes.
+     *
+     * @param length the window length, odd values give a true median
+     * @return the filter
+     */
+    public static Bmp180Filter median(int length) {
+        return new Median(length);
+    }
+
+    private static void checkLength(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be at least 1");
+        }
+    }
+
+    private static final class MovingAverage extends Bmp180Filter {
+        private final float[] window;
+        private int next;
+        private int count;
+        private double sum;
+
+        MovingAverage(int length) {
+            checkLength(length);
+            window = new float[length];
+        }
+
+        @Override
+        public float apply(float value) {
+            if (count == window.length) {
+                sum -= window[next];
+            } else {
+                count++;
+            }
+            window[next] = value;
+            sum += value;
+            next = (next + 1) % window.length;
+            return (float) (sum / count);
+        }
+
+        @Override
+        public void reset() {
+            next = 0;
+            count = 0;
+            sum = 0;
+        }
+
+        @Override
+        public float getDelay() {
+            return (window.length - 1) / 2f;
+        }
+    }
+
+    private static final class Exponential extends Bmp180Filter {
+        private final float alpha;
+        private float state;
+        private boolean primed;
+
+        Exponential(float alpha) {
+            if (!(alpha > 0 && alpha <= 1)) {
+                throw new IllegalArgumentException("alpha must be in (0, 1]");
+            }
+            this.alpha = alpha;
+        }
+
+        @Override
+        public float apply(float value) {
+            if (!primed) {
+                state = value;
+                primed = true;
+            } else {
+                state += alpha * (value - state);
+            }
+            return state;
+        }
+
+        @Override
+        public void reset() {
+            primed = false;
+        }
+
+        @Override
+        public float getDelay() {
+            return (1 - alpha) / alpha;
+        }
+    }
+
+    private static final class Median extends Bmp180Filter {
+        private final float[] window;
+        private final float[] sorted;
+        private int next;
+        private int count;
+
+        Median(int length) {
+            checkLength(length);
+            window = new float[length];
+            sorted = new float[length];
+        }
+
+        @Override
+        public float apply(float value) {
+            window[next] = value;
+            next = (next + 1) % window.length;
+            if (count < window.length) {
+                count++;
+            }
+            // insertion sort, the window is small
+            for (int i = 0; i < count; i++) {
+                float v = window[i];
+                int j = i - 1;
+                while (j >= 0 && sorted[j] > v) {
+                    sorted[j + 1] = sorted[j];
+                    j--;
+                }
+                sorted[j + 1] = v;
+            }
+            int middle = count / 2;
+            return (count & 1) == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+        }
+
+        @Override
+        public void reset() {
+            next = 0;
+            count = 0;
+        }
+
+        @Override
+        public float getDelay() {
+            return (window.length - 1) / 2f;
+        }
+    }
+}
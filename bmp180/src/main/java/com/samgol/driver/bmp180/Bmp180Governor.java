@@ -0,0 +1,241 @@
+package com.samgol.driver.bmp180;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Picks the oversampling mode of every pressure conversion. The mode follows the pressure
+ * activity: ultra low power while readings are stable, stepping up one mode at a time while the
+ * pressure changes quickly, e.g. during a rapid altitude change. The chosen mode is capped by
+ * the sample rate (the conversion has to fit in the sampling period) and by the power budget.
+ * The sample rate is the one requested with
+ * {@link Bmp180#startContinuous(int, float, Bmp180.Callback)} while the device samples at a
+ * fixed rate, and the target rate of the governor otherwise.
+ * <p>
+ * The activity is the pressure trend, the slope of a least-squares line through the last
+ * {@value #WINDOW} samples, each weighted by the datasheet RMS noise of its mode. Only the part
+ * of the slope that exceeds twice its standard error counts, so sensor noise alone reads as no
+ * activity instead of swinging the mode; until half the window is filled there is no activity.
+ * The scatter around the line is tracked separately, relative to the noise of the modes used.
+ * A mode is left downwards only once the activity falls below half the threshold that raised it.
+ * <p>
+ * The average current is estimated from the peak conversion currents
+ * ({@code MAX_POWER_CONSUMPTION_PRESSURE_UA}, {@code MAX_POWER_CONSUMPTION_TEMP_UA})
+ * times the conversion duty cycle, conservatively assuming one temperature conversion per sample.
+ *
+ * @see Bmp180#setGovernor(Bmp180Governor)
+ */
+public class Bmp180Governor {
+    static final int WINDOW = 64;
+    // typical RMS pressure noise per mode in Pa, from the datasheet
+    private static final float[] RMS_NOISE_PA = {6, 5, 4, 3};
+
+    private final float targetRateHz;
+    private final float powerBudgetUa;
+    private final float activityThreshold;
+
+    // accessed under the device lock
+    private final long[] timestamps = new long[WINDOW];
+    private final float[] pressures = new float[WINDOW];
+    private final float[] weights = new float[WINDOW];
+    private int count;
+    private int next;
+    private float activity;
+    private float noiseRatio = 1;
+
+    private volatile float rateHz;
+    private volatile int currentMode = Bmp180.BMP180_ULTRA_LOW_POWER;
+    private final AtomicLongArray modeCounts = new AtomicLongArray(4);
+
+    /**
+     * @param targetRateHz      the sample rate the consumer needs when the device does not
+     *                          sample at a fixed rate: single reads, or continuous sampling as
+     *                          fast as possible
+     * @param powerBudgetUa     the allowed average current in microamperes
+     * @param activityThreshold the pressure change rate in Pa/s above which the resolution is
+     *                          raised; every doubling of the rate raises it by one more mode
+     */
+    public Bmp180Governor(float targetRateHz, float powerBudgetUa, float activityThreshold) {
+        if (targetRateHz <= 0 || powerBudgetUa <= 0 || activityThreshold <= 0) {
+            throw new IllegalArgumentException("parameters must be positive");
+        }
+        this.targetRateHz = targetRateHz;
+        this.rateHz = targetRateHz;
+        this.powerBudgetUa = powerBudgetUa;
+        this.activityThreshold = activityThreshold;
+    }
+
+    /**
+     * Estimates the average current of sampling continuously in the given mode.
+     *
+     * @param mode   the oversampling mode
+     * @param rateHz the sample rate
+     * @return the estimated average current in microamperes
+     */
+    public static float estimateCurrent(@Bmp180.Mode int mode, float rateHz) {
+        return (Bmp180.MAX_POWER_CONSUMPTION_PRESSURE_UA * Bmp180.pressureDelayMs(mode)
+                + Bmp180.MAX_POWER_CONSUMPTION_TEMP_UA * Bmp180.TEMPERATURE_DELAY_MS) * rateHz / 1000f;
+    }
+
+    /**
+     * Returns the highest mode the current sample rate and the power budget allow.
+     *
+     * @return the highest allowed mode
+     */
+    @Bmp180.Mode
+    public int getMaxMode() {
+        float rateHz = this.rateHz;
+        float periodMs = 1000f / rateHz;
+        int mode = Bmp180.BMP180_ULTRA_HIGH_RES;
+        while (mode > Bmp180.BMP180_ULTRA_LOW_POWER
+                && (Bmp180.pressureDelayMs(mode) + Bmp180.TEMPERATURE_DELAY_MS > periodMs
+                || estimateCurrent(mode, rateHz) > powerBudgetUa)) {
+            mode--;
+        }
+        return mode;
+    }
+
+    /**
+     * Returns the mode chosen for the latest conversion.
+     *
+     * @return the mode chosen for the latest conversion.
+     */
+    @Bmp180.Mode
+    public int getCurrentMode() {
+        return currentMode;
+    }
+
+    /**
+     * Returns how many conversions ran in the given mode.
+     *
+     * @param mode the oversampling mode
+     * @return the number of conversions in that mode
+     */
+    public long getConversionCount(@Bmp180.Mode int mode) {
+        return modeCounts.get(mode);
+    }
+
+    /**
+     * Returns the estimated average current of the conversions so far at the current sample rate.
+     *
+     * @return the estimated average current in microamperes
+     */
+    public float getEstimatedCurrent() {
+        float rateHz = this.rateHz;
+        long total = 0;
+        float current = 0;
+        for (int mode = 0; mode < modeCounts.length(); mode++) {
+            long count = modeCounts.get(mode);
+            total += count;
+            current += count * estimateCurrent(mode, rateHz);
+        }
+        return total > 0 ? current / total : 0;
+    }
+
+    /**
+     * Returns the pressure trend the noise cannot explain.
+     *
+     * @return the pressure change rate in Pa/s
+     */
+    public synchronized float getActivity() {
+        return activity;
+    }
+
+    /**
+     * Returns the variance of the pressure around its trend relative to the sensor noise of the
+     * modes used: about 1 when the scatter is sensor noise, more with e.g. turbulence.
+     *
+     * @return the variance relative to the sensor noise
+     */
+    public synchronized float getNoiseRatio() {
+        return noiseRatio;
+    }
+
+    /**
+     * Picks the mode of the next pressure conversion.
+     *
+     * @param periodNs the fixed sampling period of the device, 0 if it has none
+     * @return the mode
+     */
+    @Bmp180.Mode
+    synchronized int selectMode(long periodNs) {
+        rateHz = periodNs > 0 ? 1e9f / periodNs : targetRateHz;
+        int mode = currentMode;
+        // one step at a time, so a single outlier does not swing the mode
+        if (level(activity) > mode) {
+            mode++;
+        } else if (level(2 * activity) < mode) {
+            mode--;
+        }
+        mode = Math.min(mode, getMaxMode());
+        currentMode = mode;
+        modeCounts.incrementAndGet(mode);
+        return mode;
+    }
+
+    /**
+     * Records an unfiltered pressure sample.
+     *
+     * @param pressure  the pressure in Pa
+     * @param timestamp the time of the sample in nanoseconds
+     * @param mode      the oversampling mode of the conversion
+     */
+    synchronized void onSample(float pressure, long timestamp, @Bmp180.Mode int mode) {
+        float noise = RMS_NOISE_PA[mode];
+        timestamps[next] = timestamp;
+        pressures[next] = pressure;
+        weights[next] = 1 / (noise * noise);
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+        // a short window cannot tell a trend from noise
+        if (count >= WINDOW / 2) {
+            fit(timestamp);
+        }
+    }
+
+    // the number of thresholds the activity exceeds, each twice the one before
+    private int level(float activity) {
+        int level = Bmp180.BMP180_ULTRA_LOW_POWER;
+        float threshold = activityThreshold;
+        while (level < Bmp180.BMP180_ULTRA_HIGH_RES && activity >= threshold) {
+            level++;
+            threshold *= 2;
+        }
+        return level;
+    }
+
+    // weighted least squares of the pressure over the time in seconds before the newest sample
+    private void fit(long newest) {
+        double sw = 0;
+        double st = 0;
+        double sp = 0;
+        for (int i = 0; i < count; i++) {
+            double t = (timestamps[i] - newest) * 1e-9;
+            sw += weights[i];
+            st += weights[i] * t;
+            sp += weights[i] * pressures[i];
+        }
+        double meanT = st / sw;
+        double meanP = sp / sw;
+        double stt = 0;
+        double stp = 0;
+        for (int i = 0; i < count; i++) {
+            double t = (timestamps[i] - newest) * 1e-9 - meanT;
+            stt += weights[i] * t * t;
+            stp += weights[i] * t * (pressures[i] - meanP);
+        }
+        if (!(stt > 0)) {
+            return;
+        }
+        double slope = stp / stt;
+        double chiSquare = 0;
+        for (int i = 0; i < count; i++) {
+            double t = (timestamps[i] - newest) * 1e-9 - meanT;
+            double residual = pressures[i] - meanP - slope * t;
+            chiSquare += weights[i] * residual * residual;
+        }
+        noiseRatio = (float) (chiSquare / (count - 2));
+        // the noise is at least the sensor noise, more if the samples scatter more
+        double error = Math.sqrt(Math.max(noiseRatio, 1) / stt);
+        activity = (float) Math.max(0, Math.abs(slope) - 2 * error);
+    }
+}
@@ -0,0 +1,215 @@
+package com.samgol.driver.bmp180;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Iterates over the records of a log written by {@link Bmp180Recorder}, oldest first. Records
+ * torn by a crash are skipped. Does not depend on the Android framework beyond this package, so
+ * logs can be read off the device as well.
+ * <pre>
+ * try (Bmp180LogReader reader = new Bmp180LogReader(file)) {
+ *     while (reader.next()) {
+ *         process(reader.getTimestamp(), reader.getPressure());
+ *     }
+ * }
+ * </pre>
+ */
+public final class Bmp180LogReader implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final Bmp180Calibration calibration;
+    private final long end;
+
+    private long sequence;
+    private int offset = -1;
+    private long skipped;
+
+    /**
+     * Opens a log for reading.
+     *
+     * @param path the log file
+     * @throws IOException if the file could not be mapped or is not a log
+     */
+    public Bmp180LogReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            long size = file.length();
+            if (size < Bmp180Recorder.HEADER_SIZE) {
+                throw new IOException("Not a BMP180 log: " + path);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getLong(Bmp180Recorder.MAGIC_OFFSET) != Bmp180Recorder.MAGIC) {
+                throw new IOException("Not a BMP180 log: " + path);
+            }
+            if (buffer.getInt(Bmp180Recorder.VERSION_OFFSET) != Bmp180Recorder.VERSION
+                    || buffer.getInt(Bmp180Recorder.RECORD_SIZE_OFFSET) != Bmp180Recorder.RECORD_SIZE) {
+                throw new IOException("Unsupported BMP180 log version: " + path);
+            }
+            capacity = buffer.getInt(Bmp180Recorder.CAPACITY_OFFSET);
+            if (capacity < 1 || size != Bmp180Recorder.HEADER_SIZE
+                    + (long) capacity * Bmp180Recorder.RECORD_SIZE) {
+                throw new IOException("Truncated BMP180 log: " + path);
+            }
+            byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+            buffer.position(Bmp180Recorder.CALIBRATION_OFFSET);
+            buffer.get(eeprom);
+            calibration = Bmp180Calibration.fromEeprom(eeprom, 0);
+            end = Bmp180Recorder.recoverCount(buffer, capacity);
+            sequence = Math.max(0, end - capacity);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Advances to the next intact record.
+     *
+     * @return false when there are no more records
+     */
+    public boolean next() {
+        while (sequence < end) {
+            int candidate = Bmp180Recorder.HEADER_SIZE
+                    + (int) (sequence % capacity) * Bmp180Recorder.RECORD_SIZE;
+            sequence++;
+            if (buffer.getLong(candidate + Bmp180Recorder.SEQUENCE) == sequence) {
+                offset = candidate;
+                return true;
+            }
+            skipped++;
+        }
+        offset = -1;
+        return false;
+    }
+
+    private int record() {
+        if (offset < 0) {
+            throw new IllegalStateException("No current record");
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the sequence number of the current record, counting from 1 since the log was
+     * created.
+     *
+     * @return the sequence number of the current record
+     */
+    public long getSequence() {
+        return buffer.getLong(record() + Bmp180Recorder.SEQUENCE);
+    }
+
+    /**
+     * Returns the timestamp of the current record, see {@link Bmp180Sample#getTimestamp()}.
+     *
+     * @return the timestamp of the current record
+     */
+    public long getTimestamp() {
+        return buffer.getLong(record() + Bmp180Recorder.TIMESTAMP);
+    }
+
+    /**
+     * Returns the raw (uncompensated) temperature of the current record.
+     *
+     * @return the raw (uncompensated) temperature of the current record
+     */
+    public int getRawTemperature() {
+        return buffer.getInt(record() + Bmp180Recorder.RAW_TEMPERATURE);
+    }
+
+    /**
+     * Returns the raw (uncompensated) pressure of the current record.
+     *
+     * @return the raw (uncompensated) pressure of the current record
+     */
+    public int getRawPressure() {
+        return buffer.getInt(record() + Bmp180Recorder.RAW_PRESSURE);
+    }
+
+    /**
+     * Returns the oversampling mode of the current record.
+     *
+     * @return the oversampling mode of the current record
+     */
+    @Bmp180.Mode
+    public int getMode() {
+        return buffer.getInt(record() + Bmp180Recorder.MODE);
+    }
+
+    /**
+     * Returns the pressure of the current record in Pascal.
+     *
+     * @return the pressure of the current record in Pascal
+     */
+    public int getPressure() {
+        return buffer.getInt(record() + Bmp180Recorder.PRESSURE);
+    }
+
+    /**
+     * Returns the temperature of the current record in degrees Celsius.
+     *
+     * @return the temperature of the current record in degrees Celsius
+     */
+    public float getTemperature() {
+        return buffer.getFloat(record() + Bmp180Recorder.TEMPERATURE);
+    }
+
+    /**
+     * Returns the altitude of the current record in meters.
+     *
+     * @return the altitude of the current record in meters
+     */
+    public float getAltitude() {
+        return buffer.getFloat(record() + Bmp180Recorder.ALTITUDE);
+    }
+
+    /**
+     * Returns the current record as a sample.
+     *
+     * @return the current record as a sample
+     */
+    public Bmp180Sample getSample() {
+        return new Bmp180Sample(getPressure(), getTemperature(), getAltitude(), getTimestamp(),
+                getRawTemperature(), getRawPressure(), getMode());
+    }
+
+    /**
+     * Returns the calibration of the recorded sensor.
+     *
+     * @return the calibration of the recorded sensor
+     */
+    public Bmp180Calibration getCalibration() {
+        return calibration;
+    }
+
+    /**
+     * Returns the number of records the log holds, including torn ones.
+     *
+     * @return the number of records the log holds
+     */
+    public long getRecordCount() {
+        return Math.min(end, capacity);
+    }
+
+    /**
+     * Returns the number of torn records skipped so far.
+     *
+     * @return the number of torn records skipped so far
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
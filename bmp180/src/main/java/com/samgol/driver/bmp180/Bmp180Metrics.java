@@ -0,0 +1,236 @@
+package com.samgol.driver.bmp180;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead counters and latency histograms of one {@link Bmp180}. Recording is wait-free
+ * and allocation free; {@link #snapshot()} copies the current state for export.
+ */
+public final class Bmp180Metrics {
+    /**
+     * From the start of a pressure conversion to its result being read.
+     */
+    public static final int CONVERSION = 0;
+    /**
+     * One I2C transaction.
+     */
+    public static final int I2C_TRANSACTION = 1;
+    /**
+     * Compensation, filtering and altitude of one sample.
+     */
+    public static final int COMPENSATION = 2;
+    /**
+     * One {@code UserSensorDriver.read()} of the framework.
+     */
+    public static final int FRAMEWORK_READ = 3;
+    /**
+     * How far the start of a conversion is from its tick in fixed rate continuous mode.
+     */
+    public static final int SCHEDULING_JITTER = 4;
+
+    private static final String[] NAMES = {"conversion", "i2c", "compensation", "framework_read",
+            "jitter"};
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[NAMES.length];
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong i2cErrors = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong circuitOpens = new AtomicLong();
+    private final AtomicLong circuitRejections = new AtomicLong();
+    private final AtomicLong implausible = new AtomicLong();
+    private final AtomicLong missedPeriods = new AtomicLong();
+    private final AtomicLong temperatureConversions = new AtomicLong();
+    private final AtomicLong temperatureReuses = new AtomicLong();
+    private final AtomicLongArray pressureConversions = new AtomicLongArray(4);
+    private final AtomicLong samples = new AtomicLong();
+    private volatile long startedAt = SystemClock.elapsedRealtimeNanos();
+    private volatile long lastSampleAt;
+
+    Bmp180Metrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    void record(int operation, long nanos) {
+        histograms[operation].record(nanos);
+    }
+
+    void cacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    void cacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    void i2cError() {
+        i2cErrors.incrementAndGet();
+    }
+
+    void retry() {
+        retries.incrementAndGet();
+    }
+
+    void circuitOpened() {
+        circuitOpens.incrementAndGet();
+    }
+
+    void circuitRejected() {
+        circuitRejections.incrementAndGet();
+    }
+
+    void implausible() {
+        implausible.incrementAndGet();
+    }
+
+    void missedPeriods(long count) {
+        missedPeriods.addAndGet(count);
+    }
+
+    void temperatureConverted() {
+        temperatureConversions.incrementAndGet();
+    }
+
+    void temperatureReused() {
+        temperatureReuses.incrementAndGet();
+    }
+
+    void pressureConverted(@Bmp180.Mode int mode) {
+        pressureConversions.incrementAndGet(mode);
+    }
+
+    void sample(long timestamp) {
+        samples.incrementAndGet();
+        lastSampleAt = timestamp;
+    }
+
+    /**
+     * Returns the histogram of an operation.
+     *
+     * @param operation one of {@link #CONVERSION}, {@link #I2C_TRANSACTION},
+     *                  {@link #COMPENSATION}, {@link #FRAMEWORK_READ}, {@link #SCHEDULING_JITTER}
+     * @return the histogram
+     */
+    public LatencyHistogram getHistogram(int operation) {
+        return histograms[operation];
+    }
+
+    /**
+     * Clears every counter and histogram.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        i2cErrors.set(0);
+        retries.set(0);
+        circuitOpens.set(0);
+        circuitRejections.set(0);
+        implausible.set(0);
+        missedPeriods.set(0);
+        temperatureConversions.set(0);
+        temperatureReuses.set(0);
+        for (int mode = 0; mode < pressureConversions.length(); mode++) {
+            pressureConversions.set(mode, 0);
+        }
+        samples.set(0);
+        startedAt = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Copies the current state of the metrics.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        long hits = cacheHits.get();
+        long misses = cacheMisses.get();
+        long count = samples.get();
+        long elapsed = now - startedAt;
+        long last = lastSampleAt;
+
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            values.put(NAMES[i] + ".count", histogram.getCount());
+            values.put(NAMES[i] + ".mean_us", histogram.getMean() / 1000.0);
+            values.put(NAMES[i] + ".p50_us", histogram.getPercentile(50) / 1000.0);
+            values.put(NAMES[i] + ".p99_us", histogram.getPercentile(99) / 1000.0);
+            values.put(NAMES[i] + ".max_us", histogram.getMax() / 1000.0);
+        }
+        values.put("cache.hits", hits);
+        values.put("cache.misses", misses);
+        values.put("cache.hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        values.put("i2c.errors", i2cErrors.get());
+        values.put("i2c.retries", retries.get());
+        values.put("circuit.opens", circuitOpens.get());
+        values.put("circuit.rejections", circuitRejections.get());
+        values.put("samples.implausible", implausible.get());
+        values.put("samples.missed_periods", missedPeriods.get());
+        values.put("temperature.conversions", temperatureConversions.get());
+        values.put("temperature.reused", temperatureReuses.get());
+        for (int mode = 0; mode < pressureConversions.length(); mode++) {
+            values.put("pressure.conversions.mode" + mode, pressureConversions.get(mode));
+        }
+        values.put("samples.count", count);
+        values.put("samples.rate_hz", elapsed > 0 ? count * 1e9 / elapsed : 0.0);
+        values.put("samples.age_ms", last > 0 ? (now - last) / 1e6 : -1.0);
+        return new Snapshot(now, values);
+    }
+
+    /**
+     * An immutable copy of the metrics, for export to telemetry.
+     */
+    public static final class Snapshot {
+        private final long timestamp;
+        private final Map<String, Number> values;
+
+        Snapshot(long timestamp, Map<String, Number> values) {
+            this.timestamp = timestamp;
+            this.values = values;
+        }
+
+        /**
+         * Returns the time of the snapshot, in {@link SystemClock#elapsedRealtimeNanos()} terms.
+         *
+         * @return the time of the snapshot in nanoseconds.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns one value, e.g. {@code "i2c.p99_us"} or {@code "samples.rate_hz"}.
+         *
+         * @param name the name of the value
+         * @return the value, or null if there is no such value
+         */
+        public Number get(String name) {
+            return values.get(name);
+        }
+
+        /**
+         * Returns every value by name, in a stable order.
+         *
+         * @return the values by name
+         */
+        public Map<String, Number> toMap() {
+            return new LinkedHashMap<>(values);
+        }
+
+        @Override
+        public String toString() {
+            return values.toString();
+        }
+    }
+}
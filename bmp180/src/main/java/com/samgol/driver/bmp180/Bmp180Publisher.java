@@ -0,0 +1,351 @@
+package com.samgol.driver.bmp180;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the samples of a {@link Bmp180} to any number of subscribers with backpressure, in the
+ * manner of Reactive Streams ({@code java.util.concurrent.Flow} needs API level 30). Every
+ * subscriber has its own demand, its own bounded lock-free queue and its own
+ * {@link OverflowPolicy}, and is called on an executor thread, one signal at a time. The
+ * conversion thread only enqueues, so neither the sampler nor the other subscribers ever wait
+ * for a slow subscriber.
+ * <pre>
+ * Bmp180Publisher publisher = new Bmp180Publisher(bmp180);
+ * publisher.subscribe(uploader, Bmp180Publisher.OverflowPolicy.DROP, 256);
+ * publisher.subscribe(controlLoop, Bmp180Publisher.OverflowPolicy.LATEST, 1);
+ * </pre>
+ */
+public final class Bmp180Publisher implements AutoCloseable {
+    private static final String TAG = Bmp180Publisher.class.getSimpleName();
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * What happens to a sample that arrives while the queue of a subscriber is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The arriving sample is dropped, the queued ones are kept.
+         */
+        DROP,
+        /**
+         * The oldest queued sample is dropped, so the subscriber gets the latest ones.
+         */
+        LATEST,
+        /**
+         * The subscriber fails with an {@link IOException}: it must keep up within the buffer.
+         */
+        BUFFER
+    }
+
+    /**
+     * Receives samples once it has requested them.
+     */
+    public interface Subscriber {
+        /**
+         * Called once, before any other signal.
+         *
+         * @param subscription the subscription to request samples through
+         */
+        void onSubscribe(Subscription subscription);
+
+        void onNext(Bmp180Sample sample);
+
+        /**
+         * Called when the subscription failed, e.g. on a {@link OverflowPolicy#BUFFER} overflow.
+         * No signal follows.
+         */
+        void onError(Throwable error);
+
+        /**
+         * Called when the publisher was closed. No signal follows.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between the publisher and one subscriber.
+     */
+    public interface Subscription {
+        /**
+         * Adds {@code n} samples to the demand of the subscriber.
+         *
+         * @param n the number of samples, {@link Long#MAX_VALUE} for no limit
+         */
+        void request(long n);
+
+        /**
+         * Stops the stream; samples still in flight may be delivered.
+         */
+        void cancel();
+
+        /**
+         * Returns the number of samples dropped because the subscriber fell behind.
+         *
+         * @return the number of samples dropped
+         */
+        long getDropped();
+    }
+
+    private final Bmp180 device;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final CopyOnWriteArrayList<Link> links = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    private final Bmp180.Callback listener = new Bmp180.Callback() {
+        @Override
+        public void onSample(Bmp180Sample sample) {
+            for (Link link : links) {
+                link.offer(sample);
+            }
+        }
+
+        @Override
+        public void onError(IOException e) {
+        }
+    };
+
+    /**
+     * Creates a publisher of every sample the device takes, delivering on its own threads.
+     *
+     * @param device the device to publish the samples of
+     */
+    public Bmp180Publisher(Bmp180 device) {
+        this(device, null);
+    }
+
+    /**
+     * Creates a publisher of every sample the device takes.
+     *
+     * @param device   the device to publish the samples of
+     * @param executor the executor to call the subscribers on, or null for a dedicated one; it
+     *                 needs a thread per concurrently busy subscriber
+     */
+    public Bmp180Publisher(Bmp180 device, Executor executor) {
+        this.device = device;
+        if (executor == null) {
+            ownExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Bmp180-subscriber-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor = ownExecutor;
+        } else {
+            ownExecutor = null;
+        }
+        this.executor = executor;
+        device.addSampleListener(listener);
+    }
+
+    /**
+     * Subscribes with the {@link OverflowPolicy#LATEST} policy and a small queue.
+     *
+     * @param subscriber the subscriber
+     */
+    public void subscribe(Subscriber subscriber) {
+        subscribe(subscriber, OverflowPolicy.LATEST, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Subscribes. Samples taken from now on are queued for the subscriber and delivered as it
+     * requests them.
+     *
+     * @param subscriber the subscriber
+     * @param policy     what to do when the subscriber falls behind
+     * @param capacity   how many samples may wait for the subscriber
+     */
+    public void subscribe(Subscriber subscriber, OverflowPolicy policy, int capacity) {
+        Link link = new Link(subscriber, policy, capacity);
+        if (closed) {
+            link.terminate(null);
+            link.schedule();
+            return;
+        }
+        links.add(link);
+        link.schedule();
+        if (closed) {
+            // raced with close()
+            link.terminate(null);
+            link.schedule();
+        }
+    }
+
+    /**
+     * Returns the number of active subscriptions.
+     *
+     * @return the number of active subscriptions
+     */
+    public int getSubscriberCount() {
+        return links.size();
+    }
+
+    /**
+     * Stops publishing and completes every subscriber once its queued samples are delivered.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        device.removeSampleListener(listener);
+        for (Link link : links) {
+            link.terminate(null);
+            link.schedule();
+        }
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * The state of one subscription. Signals are delivered by a drain loop that runs on the
+     * executor; the work-in-progress counter ensures one drain at a time and that no request
+     * or sample is missed between drains.
+     */
+    private final class Link implements Subscription, Runnable {
+        private final Subscriber subscriber;
+        private final OverflowPolicy policy;
+        private final SampleQueue queue;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+        // accessed only in the drain loop
+        private boolean subscribed;
+        private boolean terminated;
+
+        Link(Subscriber subscriber, OverflowPolicy policy, int capacity) {
+            if (subscriber == null || policy == null) {
+                throw new NullPointerException();
+            }
+            this.subscriber = subscriber;
+            this.policy = policy;
+            queue = new SampleQueue(capacity);
+        }
+
+        /**
+         * Called on the conversion thread; never blocks.
+         */
+        void offer(Bmp180Sample sample) {
+            if (cancelled || done) {
+                return;
+            }
+            // samples queue up while there is no demand, the policy decides once the queue is full
+            if (!queue.offer(sample, policy == OverflowPolicy.LATEST)) {
+                dropped.incrementAndGet();
+                if (policy == OverflowPolicy.BUFFER) {
+                    terminate(new Bmp180Exception("subscriber buffer overflow"));
+                }
+            }
+            schedule();
+        }
+
+        void terminate(Throwable cause) {
+            if (!done) {
+                error = cause;
+                done = true;
+            }
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "could not deliver to subscriber: ", e);
+                    cancelled = true;
+                    links.remove(this);
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                terminate(new IllegalArgumentException("request must be positive: " + n));
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            links.remove(this);
+        }
+
+        @Override
+        public long getDropped() {
+            return dropped.get() + queue.getDiscarded();
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (terminated) {
+                return;
+            }
+            try {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                while (!cancelled && requested.get() > 0) {
+                    Bmp180Sample sample = queue.poll();
+                    if (sample == null) {
+                        break;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(sample);
+                }
+                if (cancelled) {
+                    terminated = true;
+                } else if (done && (error != null || queue.isEmpty())) {
+                    terminated = true;
+                    links.remove(this);
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "subscriber failed, cancelling: ", e);
+                terminated = true;
+                cancel();
+            }
+        }
+    }
+}
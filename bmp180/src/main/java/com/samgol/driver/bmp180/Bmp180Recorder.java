@@ -0,0 +1,242 @@
+package com.samgol.driver.bmp180;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Records samples into a memory-mapped circular file of fixed-width binary records, for later
+ * analysis with {@link Bmp180LogReader}. Feed it with {@link Bmp180#addSampleListener}; writing a
+ * record is a handful of stores into the mapping and allocates nothing, so it keeps up with the
+ * full sensor rate.
+ * <p>
+ * File layout, little endian: a {@value #HEADER_SIZE} byte header holding the magic, version,
+ * record size, capacity, the calibration EEPROM and two checksummed record count slots, followed
+ * by {@code capacity} records of {@value #RECORD_SIZE} bytes. A record holds its sequence number,
+ * timestamp, raw temperature, raw pressure, mode, pressure, temperature and altitude. The sequence
+ * number is written last, so a record torn by a crash is recognised and skipped. The count slots
+ * are updated alternately, so one of them is always intact. Data in the mapping survives a crash
+ * of the process; call {@link #flush()} to make it survive a power loss too.
+ */
+public final class Bmp180Recorder implements Bmp180.Callback, Closeable {
+    private static final String TAG = Bmp180Recorder.class.getSimpleName();
+
+    static final long MAGIC = 0x474C303831504D42L; // "BMP180LG"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    static final int RECORD_SIZE = 40;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int RECORD_SIZE_OFFSET = 12;
+    static final int CAPACITY_OFFSET = 16;
+    static final int CALIBRATION_OFFSET = 20;
+    static final int[] SLOT_OFFSETS = {48, 64};
+
+    static final int SEQUENCE = 0;
+    static final int TIMESTAMP = 8;
+    static final int RAW_TEMPERATURE = 16;
+    static final int RAW_PRESSURE = 20;
+    static final int MODE = 24;
+    static final int PRESSURE = 28;
+    static final int TEMPERATURE = 32;
+    static final int ALTITUDE = 36;
+
+    // the header count is committed every this many records
+    private static final int COMMIT_INTERVAL = 64;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final CRC32 crc = new CRC32();
+
+    // guarded by this
+    private long count;
+    private int commits;
+    private boolean closed;
+
+    /**
+     * Opens or creates a log. An existing log with the same capacity and calibration is resumed
+     * after its last intact record, anything else is overwritten.
+     *
+     * @param path        the log file
+     * @param capacity    the number of records kept before the oldest are overwritten
+     * @param calibration the calibration of the recorded sensor, see {@link Bmp180#getCalibration()}
+     * @throws IOException if the file could not be mapped
+     */
+    public Bmp180Recorder(File path, int capacity, Bmp180Calibration calibration) throws IOException {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        this.capacity = capacity;
+        byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+        if (calibration != null) {
+            calibration.toEeprom(eeprom, 0);
+        }
+        file = new RandomAccessFile(path, "rw");
+        try {
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            boolean resume = file.length() == size;
+            if (!resume) {
+                file.setLength(0);
+                file.setLength(size);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (resume && isCompatible(eeprom)) {
+                count = recoverCount(buffer, capacity);
+            } else {
+                initialize(eeprom);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private boolean isCompatible(byte[] eeprom) {
+        if (buffer.getLong(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION
+                || buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE
+                || buffer.getInt(CAPACITY_OFFSET) != capacity) {
+            return false;
+        }
+        byte[] stored = new byte[Bmp180Calibration.LENGTH];
+        buffer.position(CALIBRATION_OFFSET);
+        buffer.get(stored);
+        return Arrays.equals(stored, eeprom);
+    }
+
+    private void initialize(byte[] eeprom) {
+        for (int offset = 0; offset < HEADER_SIZE; offset += 8) {
+            buffer.putLong(offset, 0);
+        }
+        // a fresh file reads back as zeros, an overwritten one has to be cleared
+        for (int slot = 0; slot < capacity; slot++) {
+            buffer.putLong(HEADER_SIZE + slot * RECORD_SIZE + SEQUENCE, 0);
+        }
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.position(CALIBRATION_OFFSET);
+        buffer.put(eeprom);
+        count = 0;
+        commit();
+        commit();
+        // the magic goes last so a header torn during initialization is not trusted
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Appends a record for the sample.
+     *
+     * @param sample the sample to record
+     */
+    @Override
+    public synchronized void onSample(Bmp180Sample sample) {
+        if (closed) {
+            return;
+        }
+        int offset = HEADER_SIZE + (int) (count % capacity) * RECORD_SIZE;
+        // invalidate the overwritten record before touching its fields
+        buffer.putLong(offset + SEQUENCE, 0);
+        buffer.putLong(offset + TIMESTAMP, sample.getTimestamp());
+        buffer.putInt(offset + RAW_TEMPERATURE, sample.getRawTemperature());
+        buffer.putInt(offset + RAW_PRESSURE, sample.getRawPressure());
+        buffer.putInt(offset + MODE, sample.getMode());
+        buffer.putInt(offset + PRESSURE, sample.getPressure());
+        buffer.putFloat(offset + TEMPERATURE, sample.getTemperature());
+        buffer.putFloat(offset + ALTITUDE, sample.getAltitude());
+        buffer.putLong(offset + SEQUENCE, count + 1);
+        count++;
+        if (count % COMMIT_INTERVAL == 0) {
+            commit();
+        }
+    }
+
+    @Override
+    public void onError(IOException e) {
+        Log.w(TAG, "onError: ", e);
+    }
+
+    private void commit() {
+        int offset = SLOT_OFFSETS[commits++ & 1];
+        buffer.putLong(offset, count);
+        buffer.putInt(offset + 8, checksum(crc, count));
+    }
+
+    /**
+     * Commits the header and writes the mapping to storage.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            commit();
+            buffer.force();
+        }
+    }
+
+    /**
+     * Returns the number of records written since the log was created.
+     *
+     * @return the number of records written since the log was created
+     */
+    public synchronized long getRecordCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of records kept.
+     *
+     * @return the number of records kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        commit();
+        buffer.force();
+        closed = true;
+        file.close();
+    }
+
+    static int checksum(CRC32 crc, long count) {
+        crc.reset();
+        for (int shift = 0; shift < 64; shift += 8) {
+            crc.update((int) (count >>> shift));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Finds the number of records written: the highest intact header count, advanced over the
+     * records written after it was committed.
+     */
+    static long recoverCount(ByteBuffer buffer, int capacity) {
+        CRC32 crc = new CRC32();
+        long count = 0;
+        for (int offset : SLOT_OFFSETS) {
+            long slot = buffer.getLong(offset);
+            if (slot > count && buffer.getInt(offset + 8) == checksum(crc, slot)) {
+                count = slot;
+            }
+        }
+        while (buffer.getLong(HEADER_SIZE + (int) (count % capacity) * RECORD_SIZE + SEQUENCE)
+                == count + 1) {
+            count++;
+        }
+        return count;
+    }
+}
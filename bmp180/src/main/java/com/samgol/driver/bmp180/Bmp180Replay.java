@@ -0,0 +1,124 @@
+package com.samgol.driver.bmp180;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays a log written by {@link Bmp180Recorder} through a {@link Bmp180}: it stands in for the
+ * sensor on the bus, serving the recorded calibration EEPROM and the recorded raw readings, and
+ * drives the full compensation, filter and altitude pipeline without waiting for conversions.
+ * Reprocessing with different filters or sea level pressure gives the same results as if the
+ * driver had been configured that way in the field.
+ * <pre>
+ * Bmp180Replay replay = new Bmp180Replay(file);
+ * Bmp180 device = new Bmp180(replay);
+ * device.setPressureFilter(Bmp180Filter.median(5));
+ * replay.run(device, callback);
+ * device.close();
+ * </pre>
+ * Samples keep their recorded timestamps. Every conversion runs in its recorded mode, whatever
+ * the mode of the device, so a {@link Bmp180Governor} set on the device observes the replay but
+ * does not change it.
+ */
+public final class Bmp180Replay implements Bmp180Transport {
+    private static final int REG_CALIBRATION = 0xAA;
+    private static final int REG_CONTROL = 0xF4;
+    private static final int REG_DATA = 0xF6;
+    private static final int READ_TEMPERATURE_CMD = 0x2E;
+    private static final int READ_PRESSURE_CMD = 0x34;
+
+    private final Bmp180LogReader reader;
+    private final byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+    private final byte[] data = new byte[3];
+
+    /**
+     * Opens a log for replay.
+     *
+     * @param path the log file
+     * @throws IOException if the log could not be read
+     */
+    public Bmp180Replay(File path) throws IOException {
+        this(new Bmp180LogReader(path));
+    }
+
+    /**
+     * Replays the remaining records of a reader.
+     *
+     * @param reader the reader to replay
+     */
+    public Bmp180Replay(Bmp180LogReader reader) {
+        this.reader = reader;
+        reader.getCalibration().toEeprom(eeprom, 0);
+    }
+
+    /**
+     * Replays every remaining record through the device, as fast as the device compensates them.
+     * Samples are delivered to the callback and to the sample listeners of the device on the
+     * calling thread.
+     *
+     * @param device   a device created on this replay
+     * @param callback the callback to deliver the samples to, or null
+     * @return the number of samples replayed
+     * @throws IOException if the device could not compensate a record
+     */
+    public long run(Bmp180 device, Bmp180.Callback callback) throws IOException {
+        long count = 0;
+        while (reader.next()) {
+            device.startTemperatureConversion();
+            int rawTemperature = device.readRawTemperatureResult();
+            int B5 = device.computeB5(rawTemperature);
+            int mode = reader.getMode();
+            device.startPressureConversion(mode);
+            int rawPressure = device.readRawPressureResult(mode);
+            Bmp180Sample sample = device.compensate(rawTemperature, B5, rawPressure, mode,
+                    reader.getTimestamp());
+            device.onSample(sample);
+            if (callback != null) {
+                callback.onSample(sample);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+        byte[] source = register == REG_CALIBRATION ? eeprom : register == REG_DATA ? data : null;
+        if (source == null || length > source.length) {
+            throw new IOException("unsupported read of " + length + " bytes at 0x"
+                    + Integer.toHexString(register));
+        }
+        System.arraycopy(source, 0, buffer, 0, length);
+    }
+
+    @Override
+    public void writeRegByte(int register, byte value) throws IOException {
+        if (register != REG_CONTROL) {
+            throw new IOException("unsupported write at 0x" + Integer.toHexString(register));
+        }
+        int command = value & 0xFF;
+        if (command == READ_TEMPERATURE_CMD) {
+            int rawTemperature = reader.getRawTemperature();
+            data[0] = (byte) (rawTemperature >> 8);
+            data[1] = (byte) rawTemperature;
+        } else if ((command & 0x3F) == READ_PRESSURE_CMD) {
+            int mode = command >> 6;
+            if (mode != reader.getMode()) {
+                throw new IOException("conversion in mode " + mode + " of a record in mode "
+                        + reader.getMode());
+            }
+            // align the recorded value so the driver decodes it unchanged
+            int rawPressure = reader.getRawPressure() << (8 - mode);
+            data[0] = (byte) (rawPressure >> 16);
+            data[1] = (byte) (rawPressure >> 8);
+            data[2] = (byte) rawPressure;
+        } else {
+            throw new IOException("unsupported command 0x" + Integer.toHexString(command));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
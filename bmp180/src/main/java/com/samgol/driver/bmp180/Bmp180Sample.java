@@ -0,0 +1,108 @@
+package com.samgol.driver.bmp180;
+
+/**
+ * An immutable, compensated reading of the sensor.
+ */
+public final class Bmp180Sample {
+    private final int pressure;
+    private final float temperature;
+    private final float altitude;
+    private final long timestamp;
+    private final int rawTemperature;
+    private final int rawPressure;
+    private final int mode;
+
+    Bmp180Sample(int pressure, float temperature, float altitude, long timestamp,
+                 int rawTemperature, int rawPressure, int mode) {
+        this.pressure = pressure;
+        this.temperature = temperature;
+        this.altitude = altitude;
+        this.timestamp = timestamp;
+        this.rawTemperature = rawTemperature;
+        this.rawPressure = rawPressure;
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the pressure in Pascal.
+     *
+     * @return the pressure in Pascal.
+     */
+    public int getPressure() {
+        return pressure;
+    }
+
+    /**
+     * Returns the temperature in degrees Celsius.
+     *
+     * @return the temperature in degrees Celsius.
+     */
+    public float getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * Returns the barometric altitude above sea level in meters.
+     *
+     * @return the barometric altitude above sea level in meters.
+     */
+    public float getAltitude() {
+        return altitude;
+    }
+
+    /**
+     * Returns the time the sample was taken, in {@link android.os.SystemClock#elapsedRealtimeNanos()} terms.
+     *
+     * @return the time the sample was taken in nanoseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the raw (uncompensated) temperature the sample was compensated with.
+     *
+     * @return the raw (uncompensated) temperature.
+     */
+    public int getRawTemperature() {
+        return rawTemperature;
+    }
+
+    /**
+     * Returns the raw (uncompensated) pressure level.
+     *
+     * @return the raw (uncompensated) pressure level.
+     */
+    public int getRawPressure() {
+        return rawPressure;
+    }
+
+    /**
+     * Returns the oversampling mode of the pressure conversion.
+     *
+     * @return the oversampling mode of the pressure conversion.
+     */
+    @Bmp180.Mode
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Copies the pressure in Pascal, the temperature in degrees Celsius and the altitude in
+     * meters into {@code dst}, starting at {@code offset}.
+     *
+     * @param dst    the destination array
+     * @param offset the index of the first value
+     */
+    public void copyTo(float[] dst, int offset) {
+        dst[offset] = pressure;
+        dst[offset + 1] = temperature;
+        dst[offset + 2] = altitude;
+    }
+
+    @Override
+    public String toString() {
+        return "Bmp180Sample{pressure=" + pressure + ", temperature=" + temperature
+                + ", altitude=" + altitude + ", timestamp=" + timestamp + "}";
+    }
+}
@@ -9,12 +9,16 @@ import com.google.android.things.userdriver.UserSensorDriver;
 import com.google.android.things.userdriver.UserSensorReading;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 public class Bmp180SensorDriver implements AutoCloseable {
     private static final String TAG = "Bmp180SensorDriver";
     public static final String BAROMETER_SENSOR = "com.samgol.barometer";
+    public static final String VERTICAL_SPEED_SENSOR = "com.samgol.verticalspeed";
     // DRIVER parameters
     // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
     private static final String DRIVER_VENDOR = "Bosch";
@@ -22,11 +26,22 @@ public class Bmp180SensorDriver implements AutoCloseable {
     private static final int DRIVER_MIN_DELAY_US = Math.round(1000000.f / Bmp180.MAX_FREQ_HZ);
     private static final int DRIVER_MAX_DELAY_US = Math.round(1000000.f / Bmp180.MIN_FREQ_HZ);
 
+    private static final int TEMPERATURE_INTERVAL = 10;
+    private static final int BUFFER_CAPACITY = 32;
+
     private Bmp180 mDevice;
+    private float mSamplingRate = Bmp180.MIN_FREQ_HZ;
+    private boolean mOnChange;
+    private float mPressureHysteresis;
+    private float mTemperatureHysteresis;
+    private float mAltitudeHysteresis;
+    private long mHeartbeatMs;
+    private final AcquisitionEngine mAcquisition = new AcquisitionEngine();
 
     private TemperatureUserDriver mTemperatureUserDriver;
     private PressureUserDriver mPressureUserDriver;
     private BarometerUserDriver mBarometerUserDriver;
+    private VerticalSpeedUserDriver mVerticalSpeedUserDriver;
 
     /**
      * Create a new framework sensor driver connected on the given bus.
@@ -39,7 +54,19 @@ public class Bmp180SensorDriver implements AutoCloseable {
      * @see #registerTemperatureSensor()
      */
     public Bmp180SensorDriver(String bus) throws IOException {
-        mDevice = new Bmp180(bus);
+        this(bus, null);
+    }
+
+    /**
+     * Create a new framework sensor driver connected on the given bus, taking the sensor
+     * calibration from {@code cache} when it is still valid.
+     *
+     * @param bus   I2C bus the sensor is connected to.
+     * @param cache the calibration cache, or null to always read the calibration
+     * @throws IOException
+     */
+    public Bmp180SensorDriver(String bus, Bmp180CalibrationCache cache) throws IOException {
+        mDevice = new Bmp180(bus, cache);
     }
 
     /**
@@ -52,6 +79,7 @@ public class Bmp180SensorDriver implements AutoCloseable {
         unregisterTemperatureSensor();
         unregisterPressureSensor();
         unregisterBarometerSensor();
+        unregisterVerticalSpeedSensor();
         if (mDevice != null) {
             try {
                 mDevice.close();
@@ -61,34 +89,186 @@ public class Bmp180SensorDriver implements AutoCloseable {
         }
     }
 
+    /**
+     * Set the sampling rate of every registered sensor and of the sensors registered later
+     * without an explicit rate. Samples are buffered, so the framework reads drain them without
+     * waiting for the I2C bus.
+     *
+     * @param rateHz the sampling rate, clamped to the range the sensor supports
+     */
+    public void setSamplingRate(float rateHz) {
+        mSamplingRate = clampRate(rateHz);
+        for (BufferedUserDriver driver : new BufferedUserDriver[]{
+                mTemperatureUserDriver, mPressureUserDriver, mBarometerUserDriver,
+                mVerticalSpeedUserDriver}) {
+            if (driver != null) {
+                driver.setSamplingRate(mSamplingRate);
+            }
+        }
+    }
+
+    /**
+     * Reuse the temperature compensation across pressure samples while it is fresh enough.
+     *
+     * @param maxAgeMs the longest time the temperature is reused, 0 to disable tracking
+     * @param maxSlope the temperature change in degrees Celsius per second up to which the
+     *                 temperature is reused for {@code maxAgeMs}, ignored when tracking is
+     *                 disabled
+     * @see Bmp180#setTemperatureTracking(long, float)
+     */
+    public void setTemperatureTracking(long maxAgeMs, float maxSlope) {
+        if (mDevice == null) {
+            throw new IllegalStateException("driver is closed");
+        }
+        mDevice.setTemperatureTracking(maxAgeMs, maxSlope);
+    }
+
+    /**
+     * Switch the registered sensors, and those registered later, to on-change reporting: the
+     * device is still sampled at the sampling rate, but a sensor only reports when its value
+     * moved by more than the hysteresis since its last report, or when {@code heartbeatMs}
+     * passed without one. The pressure sensor watches the pressure, the temperature sensor the
+     * temperature and the barometer sensor all three; the vertical speed sensor keeps reporting
+     * continuously. The barometer sensor registered afterwards declares
+     * {@link Sensor#REPORTING_MODE_ON_CHANGE}.
+     *
+     * @param pressurePa    the pressure hysteresis in Pascal
+     * @param temperatureC  the temperature hysteresis in degrees Celsius
+     * @param altitudeM     the altitude hysteresis in meters
+     * @param heartbeatMs   the longest time between two reports, in milliseconds
+     * @see #setContinuousReporting()
+     */
+    public void setOnChangeReporting(float pressurePa, float temperatureC, float altitudeM,
+                                     long heartbeatMs) {
+        if (heartbeatMs <= 0) {
+            throw new IllegalArgumentException("heartbeatMs must be positive");
+        }
+        ChangeDetector.checkArguments(pressurePa, temperatureC, altitudeM, heartbeatMs);
+        mOnChange = true;
+        mPressureHysteresis = pressurePa;
+        mTemperatureHysteresis = temperatureC;
+        mAltitudeHysteresis = altitudeM;
+        mHeartbeatMs = heartbeatMs;
+        updateReporting();
+    }
+
+    /**
+     * Switch back to reporting every sample, the default.
+     *
+     * @see #setOnChangeReporting(float, float, float, long)
+     */
+    public void setContinuousReporting() {
+        mOnChange = false;
+        updateReporting();
+    }
+
+    private void updateReporting() {
+        for (BufferedUserDriver driver : new BufferedUserDriver[]{
+                mTemperatureUserDriver, mPressureUserDriver, mBarometerUserDriver,
+                mVerticalSpeedUserDriver}) {
+            if (driver != null) {
+                driver.updateReporting();
+            }
+        }
+    }
+
+    private static float clampRate(float rateHz) {
+        return Math.max(Bmp180.MIN_FREQ_HZ, Math.min(Bmp180.MAX_FREQ_HZ, rateHz));
+    }
+
     /**
      * Register a {@link UserSensor} that pipes temperature readings into the Android SensorManager.
      *
      * @see #unregisterBarometerSensor() ()
      */
     public void registerBarometerSensor() {
+        registerBarometerSensor(mSamplingRate);
+    }
+
+    /**
+     * Register a {@link UserSensor} for barometer readings, sampled at the given rate.
+     *
+     * @param rateHz the sampling rate, clamped to the range the sensor supports
+     * @see #registerBarometerSensor()
+     */
+    public void registerBarometerSensor(float rateHz) {
         if (mDevice == null) {
             throw new IllegalStateException("cannot register closed driver");
         }
 
         if (mBarometerUserDriver == null) {
             mBarometerUserDriver = new BarometerUserDriver();
+            mBarometerUserDriver.updateReporting();
+            mBarometerUserDriver.setSamplingRate(clampRate(rateHz));
             UserDriverManager.getManager().registerSensor(mBarometerUserDriver.getUserSensor());
         }
     }
 
+    /**
+     * Register a {@link UserSensor} of type {@link #VERTICAL_SPEED_SENSOR} that reports the
+     * vertical speed in m/s and the altitude in meters, smoothed by an {@link AltitudeEstimator}
+     * fed with every sample.
+     *
+     * @see #unregisterVerticalSpeedSensor()
+     */
+    public void registerVerticalSpeedSensor() {
+        registerVerticalSpeedSensor(mSamplingRate);
+    }
+
+    /**
+     * Register a {@link UserSensor} for vertical speed readings, sampled at the given rate.
+     *
+     * @param rateHz the sampling rate, clamped to the range the sensor supports
+     * @see #registerVerticalSpeedSensor()
+     */
+    public void registerVerticalSpeedSensor(float rateHz) {
+        registerVerticalSpeedSensor(rateHz, new AltitudeEstimator());
+    }
+
+    /**
+     * Register a {@link UserSensor} for vertical speed readings from the given estimator.
+     *
+     * @param rateHz    the sampling rate, clamped to the range the sensor supports
+     * @param estimator the estimator, tuned for the application
+     * @see #registerVerticalSpeedSensor()
+     */
+    public void registerVerticalSpeedSensor(float rateHz, AltitudeEstimator estimator) {
+        if (mDevice == null) {
+            throw new IllegalStateException("cannot register closed driver");
+        }
+
+        if (mVerticalSpeedUserDriver == null) {
+            mVerticalSpeedUserDriver = new VerticalSpeedUserDriver(estimator);
+            mVerticalSpeedUserDriver.updateReporting();
+            mVerticalSpeedUserDriver.setSamplingRate(clampRate(rateHz));
+            UserDriverManager.getManager().registerSensor(mVerticalSpeedUserDriver.getUserSensor());
+        }
+    }
+
     /**
      * Register a {@link UserSensor} that pipes temperature readings into the Android SensorManager.
      *
      * @see #unregisterTemperatureSensor()
      */
     public void registerTemperatureSensor() {
+        registerTemperatureSensor(mSamplingRate);
+    }
+
+    /**
+     * Register a {@link UserSensor} for temperature readings, sampled at the given rate.
+     *
+     * @param rateHz the sampling rate, clamped to the range the sensor supports
+     * @see #registerTemperatureSensor()
+     */
+    public void registerTemperatureSensor(float rateHz) {
         if (mDevice == null) {
             throw new IllegalStateException("cannot register closed driver");
         }
 
         if (mTemperatureUserDriver == null) {
             mTemperatureUserDriver = new TemperatureUserDriver();
+            mTemperatureUserDriver.updateReporting();
+            mTemperatureUserDriver.setSamplingRate(clampRate(rateHz));
             UserDriverManager.getManager().registerSensor(mTemperatureUserDriver.getUserSensor());
         }
     }
@@ -99,12 +279,24 @@ public class Bmp180SensorDriver implements AutoCloseable {
      * @see #unregisterPressureSensor()
      */
     public void registerPressureSensor() {
+        registerPressureSensor(mSamplingRate);
+    }
+
+    /**
+     * Register a {@link UserSensor} for pressure readings, sampled at the given rate.
+     *
+     * @param rateHz the sampling rate, clamped to the range the sensor supports
+     * @see #registerPressureSensor()
+     */
+    public void registerPressureSensor(float rateHz) {
         if (mDevice == null) {
             throw new IllegalStateException("cannot register closed driver");
         }
 
         if (mPressureUserDriver == null) {
             mPressureUserDriver = new PressureUserDriver();
+            mPressureUserDriver.updateReporting();
+            mPressureUserDriver.setSamplingRate(clampRate(rateHz));
             UserDriverManager.getManager().registerSensor(mPressureUserDriver.getUserSensor());
         }
     }
@@ -115,6 +307,7 @@ public class Bmp180SensorDriver implements AutoCloseable {
     public void unregisterTemperatureSensor() {
         if (mTemperatureUserDriver != null) {
             UserDriverManager.getManager().unregisterSensor(mTemperatureUserDriver.getUserSensor());
+            mAcquisition.setEnabled(mTemperatureUserDriver, false);
             mTemperatureUserDriver = null;
         }
     }
@@ -125,6 +318,7 @@ public class Bmp180SensorDriver implements AutoCloseable {
     public void unregisterPressureSensor() {
         if (mPressureUserDriver != null) {
             UserDriverManager.getManager().unregisterSensor(mPressureUserDriver.getUserSensor());
+            mAcquisition.setEnabled(mPressureUserDriver, false);
             mPressureUserDriver = null;
         }
     }
@@ -135,12 +329,177 @@ public class Bmp180SensorDriver implements AutoCloseable {
     public void unregisterBarometerSensor() {
         if (mBarometerUserDriver != null) {
             UserDriverManager.getManager().unregisterSensor(mBarometerUserDriver.getUserSensor());
+            mAcquisition.setEnabled(mBarometerUserDriver, false);
             mBarometerUserDriver = null;
         }
     }
 
+    /**
+     * Unregister the vertical speed {@link UserSensor}.
+     */
+    public void unregisterVerticalSpeedSensor() {
+        if (mVerticalSpeedUserDriver != null) {
+            UserDriverManager.getManager().unregisterSensor(mVerticalSpeedUserDriver.getUserSensor());
+            mAcquisition.setEnabled(mVerticalSpeedUserDriver, false);
+            mVerticalSpeedUserDriver = null;
+        }
+    }
 
-    private class PressureUserDriver extends UserSensorDriver {
+    /**
+     * The single acquisition engine of the driver. One physical sample feeds every enabled
+     * sensor; the device is sampled at the fastest rate requested among them and not at all
+     * while none is enabled.
+     */
+    private class AcquisitionEngine implements Bmp180.Callback {
+        // iterated on the conversion thread
+        private final List<BufferedUserDriver> mEnabledDrivers = new CopyOnWriteArrayList<>();
+
+        synchronized void setEnabled(BufferedUserDriver driver, boolean enabled) {
+            if (enabled) {
+                if (!mEnabledDrivers.contains(driver)) {
+                    mEnabledDrivers.add(driver);
+                }
+            } else {
+                mEnabledDrivers.remove(driver);
+            }
+            update();
+        }
+
+        synchronized void update() {
+            if (mDevice == null) {
+                return;
+            }
+            if (mEnabledDrivers.isEmpty()) {
+                mDevice.stopContinuous();
+                return;
+            }
+            float rate = 0;
+            for (BufferedUserDriver driver : mEnabledDrivers) {
+                rate = Math.max(rate, driver.mSamplingRate);
+            }
+            mDevice.startContinuous(TEMPERATURE_INTERVAL, rate, this);
+        }
+
+        @Override
+        public void onSample(Bmp180Sample sample) {
+            for (BufferedUserDriver driver : mEnabledDrivers) {
+                driver.offer(sample);
+            }
+        }
+
+        @Override
+        public void onError(IOException e) {
+            Log.w(TAG, "sampling error: ", e);
+        }
+    }
+
+    /**
+     * A user driver that serves the framework reads from a buffer filled by the acquisition
+     * engine.
+     */
+    private abstract class BufferedUserDriver extends UserSensorDriver {
+        private final SampleRing mBuffer = new SampleRing(BUFFER_CAPACITY);
+        private volatile float mSamplingRate = Bmp180.MIN_FREQ_HZ;
+        private volatile boolean mEnabled;
+        // replaced as a whole, used only on the conversion thread
+        private volatile ChangeDetector mChangeDetector;
+        // accessed only on the conversion thread
+        private long mNextDue;
+
+        void updateReporting() {
+            mChangeDetector = mOnChange ? newChangeDetector(mPressureHysteresis,
+                    mTemperatureHysteresis, mAltitudeHysteresis, mHeartbeatMs) : null;
+        }
+
+        /**
+         * Returns the detector deciding which samples this sensor reports in on-change mode, or
+         * null to report every sample.
+         */
+        ChangeDetector newChangeDetector(float pressurePa, float temperatureC, float altitudeM,
+                                         long heartbeatMs) {
+            return new ChangeDetector(pressurePa, temperatureC, altitudeM, heartbeatMs);
+        }
+
+        void setSamplingRate(float rateHz) {
+            mSamplingRate = rateHz;
+            if (mEnabled) {
+                mAcquisition.update();
+            }
+        }
+
+        /**
+         * Buffers the sample unless the engine runs faster than this sensor's rate.
+         */
+        void offer(Bmp180Sample sample) {
+            long timestamp = sample.getTimestamp();
+            if (timestamp < mNextDue) {
+                return;
+            }
+            long period = (long) (1e9 / mSamplingRate);
+            mNextDue += period;
+            if (mNextDue <= timestamp) {
+                mNextDue = timestamp + period;
+            }
+            ChangeDetector detector = mChangeDetector;
+            if (detector != null && !detector.accept(sample)) {
+                return;
+            }
+            mBuffer.offer(sample);
+        }
+
+        @Override
+        public UserSensorReading read() throws IOException {
+            long start = System.nanoTime();
+            Bmp180 device = mDevice;
+            if (device == null) {
+                // the framework may still poll a sensor unregistered by close()
+                throw new IOException("driver is closed");
+            }
+            try {
+                return toReading(next(device));
+            } finally {
+                device.getMetrics().record(Bmp180Metrics.FRAMEWORK_READ, System.nanoTime() - start);
+            }
+        }
+
+        private Bmp180Sample next(Bmp180 device) throws IOException {
+            if (!mEnabled) {
+                return device.readLatest();
+            }
+            Bmp180Sample sample;
+            long timeoutMs = DRIVER_MAX_DELAY_US / 1000;
+            ChangeDetector detector = mChangeDetector;
+            if (detector != null) {
+                // nothing arrives while the values are stable, until the heartbeat
+                timeoutMs += detector.getHeartbeatMs();
+            }
+            try {
+                sample = mBuffer.poll(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a sample");
+            }
+            if (sample == null) {
+                // the sampler is stalled, fall back to a direct read
+                sample = device.readLatest();
+            }
+            return sample;
+        }
+
+        abstract UserSensorReading toReading(Bmp180Sample sample);
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            Log.d(TAG, "setEnabled() called with: enabled = [" + enabled + "]");
+            mEnabled = enabled;
+            if (!enabled) {
+                mBuffer.clear();
+            }
+            mAcquisition.setEnabled(this, enabled);
+        }
+    }
+
+    private class PressureUserDriver extends BufferedUserDriver {
         // DRIVER parameters
         // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
         private static final float DRIVER_MAX_RANGE = Bmp180.MAX_PRESSURE_HPA;
@@ -149,7 +508,8 @@ public class Bmp180SensorDriver implements AutoCloseable {
         private static final int DRIVER_VERSION = 1;
         private static final String DRIVER_REQUIRED_PERMISSION = "";
 
-        private boolean mEnabled;
+        // the framework copies the values out before the next read(), so the array is recycled
+        private final float[] mValues = new float[1];
         private UserSensor mUserSensor;
 
         private UserSensor getUserSensor() {
@@ -162,10 +522,9 @@ public class Bmp180SensorDriver implements AutoCloseable {
                         .setMaxRange(DRIVER_MAX_RANGE)
                         .setResolution(DRIVER_RESOLUTION)
                         .setPower(DRIVER_POWER)
-                        .setMinDelay(500000)
-//                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
                         .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
-//                        .setMaxDelay(DRIVER_MAX_DELAY_US)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
                         .setUuid(UUID.randomUUID())
                         .setDriver(this)
                         .build();
@@ -174,30 +533,27 @@ public class Bmp180SensorDriver implements AutoCloseable {
         }
 
         @Override
-        public UserSensorReading read() throws IOException {
-            return new UserSensorReading(new float[]{mDevice.readPressure()});
+        ChangeDetector newChangeDetector(float pressurePa, float temperatureC, float altitudeM,
+                                         long heartbeatMs) {
+            return new ChangeDetector(pressurePa, ChangeDetector.IGNORE, ChangeDetector.IGNORE,
+                    heartbeatMs);
         }
 
         @Override
-        public void setEnabled(boolean enabled) throws IOException {
-            Log.d(TAG, "setEnabled() called with: enabled = [" + enabled + "]");
-            mEnabled = enabled;
-        }
-
-        private boolean isEnabled() {
-            return mEnabled;
+        UserSensorReading toReading(Bmp180Sample sample) {
+            mValues[0] = sample.getPressure();
+            return new UserSensorReading(mValues);
         }
-
-
     }
 
 
-    private class BarometerUserDriver extends UserSensorDriver {
+    private class BarometerUserDriver extends BufferedUserDriver {
         private static final float DRIVER_RESOLUTION = 0.005f;
         private static final float DRIVER_POWER = Bmp180.MAX_POWER_CONSUMPTION_TEMP_UA / 1000.f;
         private static final int DRIVER_VERSION = 1;
         private static final String DRIVER_REQUIRED_PERMISSION = "";
-        private boolean mEnabled;
+        // the framework copies the values out before the next read(), so the array is recycled
+        private final float[] mValues = new float[3];
         private UserSensor mUserSensor;
 
         private UserSensor getUserSensor() {
@@ -205,12 +561,14 @@ public class Bmp180SensorDriver implements AutoCloseable {
                 mUserSensor = UserSensor.builder()
                         .setCustomType(Sensor.TYPE_DEVICE_PRIVATE_BASE,
                                 BAROMETER_SENSOR,
-                                Sensor.REPORTING_MODE_CONTINUOUS)
+                                mOnChange ? Sensor.REPORTING_MODE_ON_CHANGE
+                                        : Sensor.REPORTING_MODE_CONTINUOUS)
                         .setName(DRIVER_NAME)
                         .setVendor(DRIVER_VENDOR)
                         .setVersion(DRIVER_VERSION)
                         .setResolution(DRIVER_RESOLUTION)
-                        .setMinDelay(500000)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
                         .setPower(DRIVER_POWER)
                         .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
                         .setUuid(UUID.randomUUID())
@@ -221,23 +579,69 @@ public class Bmp180SensorDriver implements AutoCloseable {
         }
 
         @Override
-        public UserSensorReading read() throws IOException {
-            return new UserSensorReading(mDevice.readAllValues());
+        UserSensorReading toReading(Bmp180Sample sample) {
+            sample.copyTo(mValues, 0);
+            return new UserSensorReading(mValues);
+        }
+    }
+
+    private class VerticalSpeedUserDriver extends BufferedUserDriver {
+        private static final float DRIVER_RESOLUTION = 0.01f;
+        private static final float DRIVER_POWER = Bmp180.MAX_POWER_CONSUMPTION_PRESSURE_UA / 1000.f;
+        private static final int DRIVER_VERSION = 1;
+        private static final String DRIVER_REQUIRED_PERMISSION = "";
+        // the framework copies the values out before the next read(), so the array is recycled
+        private final float[] mValues = new float[2];
+        private final AltitudeEstimator mEstimator;
+        private UserSensor mUserSensor;
+
+        VerticalSpeedUserDriver(AltitudeEstimator estimator) {
+            mEstimator = estimator;
+        }
+
+        private UserSensor getUserSensor() {
+            if (mUserSensor == null) {
+                mUserSensor = UserSensor.builder()
+                        .setCustomType(Sensor.TYPE_DEVICE_PRIVATE_BASE,
+                                VERTICAL_SPEED_SENSOR,
+                                Sensor.REPORTING_MODE_CONTINUOUS)
+                        .setName(DRIVER_NAME)
+                        .setVendor(DRIVER_VENDOR)
+                        .setVersion(DRIVER_VERSION)
+                        .setResolution(DRIVER_RESOLUTION)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
+                        .setPower(DRIVER_POWER)
+                        .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
+                        .setUuid(UUID.randomUUID())
+                        .setDriver(this)
+                        .build();
+            }
+            return mUserSensor;
         }
 
         @Override
-        public void setEnabled(boolean enabled) throws IOException {
-            Log.d(TAG, "setEnabled() called with: enabled = [" + enabled + "]");
-            mEnabled = enabled;
+        ChangeDetector newChangeDetector(float pressurePa, float temperatureC, float altitudeM,
+                                         long heartbeatMs) {
+            // a climb rate is consumed continuously by control loops
+            return null;
         }
 
-        private boolean isEnabled() {
-            return mEnabled;
+        @Override
+        void offer(Bmp180Sample sample) {
+            // the estimate sees every sample, not only those buffered for the framework
+            mEstimator.onSample(sample);
+            super.offer(sample);
         }
 
+        @Override
+        UserSensorReading toReading(Bmp180Sample sample) {
+            mEstimator.copyTo(mValues, 0);
+            return new UserSensorReading(mValues);
+        }
     }
 
-    private class TemperatureUserDriver extends UserSensorDriver {
+    private class TemperatureUserDriver extends BufferedUserDriver {
         // DRIVER parameters
         // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
         private static final float DRIVER_MAX_RANGE = Bmp180.MAX_TEMP_C;
@@ -246,7 +650,8 @@ public class Bmp180SensorDriver implements AutoCloseable {
         private static final int DRIVER_VERSION = 1;
         private static final String DRIVER_REQUIRED_PERMISSION = "";
 
-        private boolean mEnabled;
+        // the framework copies the values out before the next read(), so the array is recycled
+        private final float[] mValues = new float[1];
         private UserSensor mUserSensor;
 
         private UserSensor getUserSensor() {
@@ -259,10 +664,9 @@ public class Bmp180SensorDriver implements AutoCloseable {
                         .setMaxRange(DRIVER_MAX_RANGE)
                         .setResolution(DRIVER_RESOLUTION)
                         .setPower(DRIVER_POWER)
-                        .setMinDelay(500000)
-//                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
                         .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
-//                        .setMaxDelay(DRIVER_MAX_DELAY_US)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
                         .setUuid(UUID.randomUUID())
                         .setDriver(this)
                         .build();
@@ -271,18 +675,16 @@ public class Bmp180SensorDriver implements AutoCloseable {
         }
 
         @Override
-        public UserSensorReading read() throws IOException {
-            return new UserSensorReading(new float[]{mDevice.readTemperature()});
+        ChangeDetector newChangeDetector(float pressurePa, float temperatureC, float altitudeM,
+                                         long heartbeatMs) {
+            return new ChangeDetector(ChangeDetector.IGNORE, temperatureC, ChangeDetector.IGNORE,
+                    heartbeatMs);
         }
 
         @Override
-        public void setEnabled(boolean enabled) throws IOException {
-            Log.d(TAG, "setEnabled() called with: enabled = [" + enabled + "]");
-            mEnabled = enabled;
-        }
-
-        private boolean isEnabled() {
-            return mEnabled;
+        UserSensorReading toReading(Bmp180Sample sample) {
+            mValues[0] = sample.getTemperature();
+            return new UserSensorReading(mValues);
         }
     }
 
@@ -0,0 +1,268 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A register level model of the BMP180 that runs on a plain JVM. It serves the calibration
+ * EEPROM, accepts conversion commands on the control register 0xF4 and publishes the results
+ * on 0xF6..0xF8 once the datasheet conversion time has elapsed; until then the data registers
+ * keep their previous content, as on the real chip.
+ * <p>
+ * The simulated environment (pressure, temperature) is turned into raw readings by inverting
+ * the compensation of the configured calibration, so the driver reads back what was set.
+ * Noise, bus latency, extra conversion latency and bus errors can be injected.
+ */
+public class Bmp180Simulator implements Bmp180Transport {
+
+    /**
+     * The calibration used as the worked example in the BMP180 datasheet.
+     */
+    public static final Bmp180Calibration DATASHEET_CALIBRATION = new Bmp180Calibration(
+            408, -72, -14383, 32741, 32757, 23153, 6190, 4, -32768, -8711, 2868);
+
+    public static final int CHIP_ID = 0x55;
+
+    private static final int REG_CALIBRATION = 0xAA;
+    private static final int REG_CHIP_ID = 0xD0;
+    private static final int REG_CONTROL = 0xF4;
+    private static final int REG_DATA = 0xF6;
+    private static final int CONVERSION_RUNNING = 0x20;
+    private static final int READ_TEMPERATURE_CMD = 0x2E;
+    private static final int READ_PRESSURE_CMD = 0x34;
+
+    private static final long TEMPERATURE_CONVERSION_NS = 4500000;
+    private static final long[] PRESSURE_CONVERSION_NS = {4500000, 7500000, 13500000, 25500000};
+
+    private final Bmp180Calibration calibration;
+    private final Random random;
+    private final byte[] registers = new byte[256];
+
+    private double pressure = 101325;
+    private double temperature = 15;
+    private double pressureNoise;
+    private double temperatureNoise;
+    private long busLatencyNs;
+    private long conversionLatencyNs;
+    private double errorRate;
+
+    private int pendingCommand = -1;
+    private long readyAt;
+    private long transactionCount;
+    private boolean closed;
+
+    /**
+     * Creates a simulator with the datasheet calibration.
+     */
+    public Bmp180Simulator() {
+        this(DATASHEET_CALIBRATION, 0);
+    }
+
+    /**
+     * Creates a simulator.
+     *
+     * @param calibration the calibration to serve from the EEPROM
+     * @param seed        the seed for noise and error injection
+     */
+    public Bmp180Simulator(Bmp180Calibration calibration, long seed) {
+        this.calibration = calibration;
+        random = new Random(seed);
+        calibration.toEeprom(registers, REG_CALIBRATION);
+        registers[REG_CHIP_ID] = (byte) CHIP_ID;
+    }
+
+    /**
+     * Sets the simulated ambient pressure.
+     *
+     * @param pressure the pressure in Pascal
+     */
+    public synchronized void setPressure(double pressure) {
+        this.pressure = pressure;
+    }
+
+    /**
+     * Sets the simulated ambient temperature.
+     *
+     * @param temperature the temperature in degrees Celsius
+     */
+    public synchronized void setTemperature(double temperature) {
+        this.temperature = temperature;
+    }
+
+    /**
+     * Adds gaussian noise to every conversion.
+     *
+     * @param pressureNoise    the standard deviation of the pressure in Pascal
+     * @param temperatureNoise the standard deviation of the temperature in degrees Celsius
+     */
+    public synchronized void setNoise(double pressureNoise, double temperatureNoise) {
+        this.pressureNoise = pressureNoise;
+        this.temperatureNoise = temperatureNoise;
+    }
+
+    /**
+     * Delays every bus transaction.
+     *
+     * @param latency the delay
+     * @param unit    the unit of the delay
+     */
+    public synchronized void setBusLatency(long latency, TimeUnit unit) {
+        busLatencyNs = unit.toNanos(latency);
+    }
+
+    /**
+     * Makes conversions take longer than the datasheet conversion time.
+     *
+     * @param latency the additional conversion time
+     * @param unit    the unit of the additional conversion time
+     */
+    public synchronized void setConversionLatency(long latency, TimeUnit unit) {
+        conversionLatencyNs = unit.toNanos(latency);
+    }
+
+    /**
+     * Makes bus transactions fail with an {@link IOException}.
+     *
+     * @param errorRate the probability of a transaction to fail, from 0 to 1
+     */
+    public synchronized void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Returns the number of bus transactions served so far, including failed ones.
+     *
+     * @return the number of bus transactions served so far.
+     */
+    public synchronized long getTransactionCount() {
+        return transactionCount;
+    }
+
+    @Override
+    public synchronized void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+        transact();
+        if (register < 0 || register + length > registers.length) {
+            throw new IOException("register out of range: 0x" + Integer.toHexString(register));
+        }
+        update();
+        System.arraycopy(registers, register, buffer, 0, length);
+    }
+
+    @Override
+    public synchronized void writeRegByte(int register, byte value) throws IOException {
+        transact();
+        update();
+        if (register != REG_CONTROL) {
+            // the calibration EEPROM and the data registers are read only
+            return;
+        }
+        int command = value & 0xFF;
+        long conversionNs;
+        if (command == READ_TEMPERATURE_CMD) {
+            conversionNs = TEMPERATURE_CONVERSION_NS;
+        } else if ((command & 0x3F) == READ_PRESSURE_CMD) {
+            conversionNs = PRESSURE_CONVERSION_NS[command >> 6];
+        } else {
+            return;
+        }
+        pendingCommand = command;
+        readyAt = System.nanoTime() + conversionNs + conversionLatencyNs;
+        registers[REG_CONTROL] = (byte) (command | CONVERSION_RUNNING);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+    }
+
+    private void transact() throws IOException {
+        if (closed) {
+            throw new IOException("simulator is closed");
+        }
+        transactionCount++;
+        if (busLatencyNs > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(busLatencyNs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            throw new IOException("simulated bus error");
+        }
+    }
+
+    /**
+     * Publishes the result of the pending conversion once its conversion time has elapsed.
+     */
+    private void update() {
+        if (pendingCommand < 0 || System.nanoTime() < readyAt) {
+            return;
+        }
+        double t = temperature + temperatureNoise * random.nextGaussian();
+        int UT = rawTemperature(t);
+        if (pendingCommand == READ_TEMPERATURE_CMD) {
+            registers[REG_DATA] = (byte) (UT >> 8);
+            registers[REG_DATA + 1] = (byte) UT;
+        } else {
+            int mode = pendingCommand >> 6;
+            double p = pressure + pressureNoise * random.nextGaussian();
+            int UP = rawPressure(p, calibration.computeB5(UT), mode);
+            int data = UP << (8 - mode);
+            registers[REG_DATA] = (byte) (data >> 16);
+            registers[REG_DATA + 1] = (byte) (data >> 8);
+            registers[REG_DATA + 2] = (byte) data;
+        }
+        registers[REG_CONTROL] = (byte) pendingCommand;
+        pendingCommand = -1;
+    }
+
+    /**
+     * Finds the smallest raw temperature the driver compensates to at least {@code t}.
+     */
+    private int rawTemperature(double t) {
+        int target = (int) Math.round(t * 10);
+        int low = 0;
+        int high = 0xFFFF;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (temperatureAtLeast(mid, target)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private boolean temperatureAtLeast(int UT, int target) {
+        int X1 = ((UT - calibration.AC6) * calibration.AC5) >> 15;
+        if (X1 + calibration.MD <= 0) {
+            // below the valid range of the compensation
+            return false;
+        }
+        return Bmp180Calibration.computeTemperature(calibration.computeB5(UT)) >= target;
+    }
+
+    /**
+     * Finds the smallest raw pressure the driver compensates to at least {@code p}.
+     */
+    private int rawPressure(double p, int B5, int mode) {
+        int target = (int) Math.round(p);
+        int low = 0;
+        int high = (1 << (16 + mode)) - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int compensated = calibration.computePressure(B5, mid, mode);
+            // negative results mean the 32 bit compensation overflowed: the reading is too high
+            if (compensated >= target || compensated < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,33 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+
+/**
+ * The register level bus operations {@link Bmp180} needs. Implemented on top of an
+ * {@link com.google.android.things.pio.I2cDevice} on the device, and by
+ * {@link Bmp180Simulator} off the device.
+ */
+public interface Bmp180Transport extends AutoCloseable {
+
+    /**
+     * Reads {@code length} consecutive registers starting at {@code register}.
+     *
+     * @param register the first register to read
+     * @param buffer   the destination buffer
+     * @param length   the number of bytes to read
+     * @throws IOException if there was communication problem
+     */
+    void readRegBuffer(int register, byte[] buffer, int length) throws IOException;
+
+    /**
+     * Writes one register.
+     *
+     * @param register the register to write
+     * @param value    the value to write
+     * @throws IOException if there was communication problem
+     */
+    void writeRegByte(int register, byte value) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
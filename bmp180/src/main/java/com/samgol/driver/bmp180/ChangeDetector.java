@@ -0,0 +1,131 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+
+/**
+ * Passes a sample on only when it differs from the last one passed on by more than a hysteresis
+ * in pressure, temperature or altitude, or when a heartbeat interval has expired without one.
+ * While conditions are stable, consumers are then woken once per heartbeat instead of once per
+ * sample. Not thread safe; feed it from one thread, e.g. the conversion thread.
+ */
+public final class ChangeDetector {
+    /**
+     * Disables the hysteresis of one quantity.
+     */
+    public static final float IGNORE = Float.POSITIVE_INFINITY;
+
+    private final float pressureHysteresis;
+    private final float temperatureHysteresis;
+    private final float altitudeHysteresis;
+    private final long heartbeatNs;
+
+    private boolean reported;
+    private float pressure;
+    private float temperature;
+    private float altitude;
+    private long reportedAt;
+    private long suppressed;
+
+    /**
+     * @param pressureHysteresis    the pressure change that is reported, in Pascal, or
+     *                              {@link #IGNORE}
+     * @param temperatureHysteresis the temperature change that is reported, in degrees Celsius,
+     *                              or {@link #IGNORE}
+     * @param altitudeHysteresis    the altitude change that is reported, in meters, or
+     *                              {@link #IGNORE}
+     * @param heartbeatMs           the longest time without a report, 0 for none
+     */
+    public ChangeDetector(float pressureHysteresis, float temperatureHysteresis,
+                          float altitudeHysteresis, long heartbeatMs) {
+        checkArguments(pressureHysteresis, temperatureHysteresis, altitudeHysteresis, heartbeatMs);
+        this.pressureHysteresis = pressureHysteresis;
+        this.temperatureHysteresis = temperatureHysteresis;
+        this.altitudeHysteresis = altitudeHysteresis;
+        this.heartbeatNs = heartbeatMs * 1000000L;
+    }
+
+    /**
+     * Checks the arguments of {@link #ChangeDetector(float, float, float, long)}.
+     *
+     * @throws IllegalArgumentException if one of them is negative or NaN
+     */
+    static void checkArguments(float pressureHysteresis, float temperatureHysteresis,
+                               float altitudeHysteresis, long heartbeatMs) {
+        if (!(pressureHysteresis >= 0) || !(temperatureHysteresis >= 0)
+                || !(altitudeHysteresis >= 0) || heartbeatMs < 0) {
+            throw new IllegalArgumentException("hysteresis and heartbeat must not be negative");
+        }
+    }
+
+    /**
+     * Decides whether the sample is reported and, if so, makes it the new reference.
+     *
+     * @param sample the sample
+     * @return true if the sample should be reported
+     */
+    public boolean accept(Bmp180Sample sample) {
+        long timestamp = sample.getTimestamp();
+        if (reported
+                && Math.abs(sample.getPressure() - pressure) <= pressureHysteresis
+                && Math.abs(sample.getTemperature() - temperature) <= temperatureHysteresis
+                && Math.abs(sample.getAltitude() - altitude) <= altitudeHysteresis
+                && (heartbeatNs == 0 || timestamp - reportedAt < heartbeatNs)) {
+            suppressed++;
+            return false;
+        }
+        reported = true;
+        pressure = sample.getPressure();
+        temperature = sample.getTemperature();
+        altitude = sample.getAltitude();
+        reportedAt = timestamp;
+        return true;
+    }
+
+    /**
+     * Returns a callback that forwards only the samples this detector accepts, e.g. for
+     * {@link Bmp180#addSampleListener(Bmp180.Callback)}.
+     *
+     * @param callback the callback to forward to
+     * @return the filtering callback
+     */
+    public Bmp180.Callback wrap(final Bmp180.Callback callback) {
+        return new Bmp180.Callback() {
+            @Override
+            public void onSample(Bmp180Sample sample) {
+                if (accept(sample)) {
+                    callback.onSample(sample);
+                }
+            }
+
+            @Override
+            public void onError(IOException e) {
+                callback.onError(e);
+            }
+        };
+    }
+
+    /**
+     * Returns the heartbeat interval.
+     *
+     * @return the heartbeat interval in milliseconds, 0 for none
+     */
+    public long getHeartbeatMs() {
+        return heartbeatNs / 1000000L;
+    }
+
+    /**
+     * Returns the number of samples that were not reported.
+     *
+     * @return the number of samples that were not reported
+     */
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * Forgets the reference, so the next sample is reported.
+     */
+    public void reset() {
+        reported = false;
+    }
+}
@@ -0,0 +1,449 @@
+package com.samgol.driver.bmp180;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Runs temperature and pressure conversions on a dedicated scheduler. A conversion is started,
+ * its completion is scheduled after the conversion time and only then the result registers are
+ * read, so no lock is held while the sensor is busy.
+ * <p>
+ * In continuous mode the next conversion is started right after the previous result has been
+ * read, before compensation, so the sensor never idles. The temperature is only converted once
+ * every {@code temperatureInterval} pressure conversions; the B5 term is reused in between. With
+ * temperature tracking enabled a {@link TemperatureTracker} decides instead, by the age of B5 and
+ * the temperature slope, in continuous mode as well as for single conversions.
+ * A sampling period slows continuous mode down to a fixed rate: pressure conversions start on a
+ * grid of {@link SystemClock#elapsedRealtimeNanos()} ticks, so late starts do not accumulate into
+ * drift, and ticks that were missed entirely are skipped rather than caught up in a burst.
+ * Samples are stamped with the midpoint of their pressure conversion.
+ */
+class ConversionEngine {
+    private static final String TAG = ConversionEngine.class.getSimpleName();
+
+    private final Bmp180 device;
+    private final ScheduledExecutorService sharedScheduler;
+    private final TemperatureTracker tracker = new TemperatureTracker();
+    // set to make the next pressure conversion wait for a fresh B5, cleared on the scheduler
+    private volatile boolean b5Invalid = true;
+
+    // guarded by this
+    private final List<Bmp180.Callback> pending = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private boolean inFlight;
+    private boolean closed;
+    private volatile boolean continuous;
+    private int temperatureInterval = 1;
+    private volatile long periodNs;
+    private Bmp180.Callback listener;
+    // the error of the latest conversion, null once one succeeds again
+    private volatile IOException lastError;
+
+    // accessed only on the scheduler thread
+    private final List<Bmp180.Callback> delivering = new ArrayList<>();
+    private int rawTemperature;
+    private int b5;
+    private int pressureMode;
+    private int pressureSinceTemperature;
+    private long nextStartNs;
+    private boolean onSchedule;
+    private long conversionStartNs;
+    private long conversionMidpointNs;
+
+    /**
+     * @param device          the device to convert on
+     * @param sharedScheduler a scheduler shared with other devices on the same bus, or null to
+     *                        create a dedicated one
+     */
+    ConversionEngine(Bmp180 device, ScheduledExecutorService sharedScheduler) {
+        this.device = device;
+        this.sharedScheduler = sharedScheduler;
+    }
+
+    /**
+     * Requests a conversion. When one is already in flight the callback joins it.
+     *
+     * @param callback the callback to notify, may be null
+     */
+    void submit(Bmp180.Callback callback) {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (closed) {
+                if (callback != null) {
+                    callback.onError(new IOException("device is closed"));
+                }
+                return;
+            }
+            if (callback != null) {
+                pending.add(callback);
+            }
+            if (inFlight) {
+                return;
+            }
+            inFlight = true;
+            executor = scheduler();
+        }
+        executor.execute(start);
+    }
+
+    /**
+     * Starts back to back conversions, delivering every sample to the listener.
+     *
+     * @param temperatureInterval number of pressure conversions per temperature conversion
+     * @param periodNs            the sampling period, 0 to sample as fast as possible
+     * @param listener            the callback to notify, may be null
+     */
+    void startContinuous(int temperatureInterval, long periodNs, Bmp180.Callback listener) {
+        if (temperatureInterval < 1) {
+            throw new IllegalArgumentException("temperatureInterval must be at least 1");
+        }
+        if (periodNs < 0) {
+            throw new IllegalArgumentException("periodNs must not be negative");
+        }
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("device is closed");
+            }
+            this.temperatureInterval = temperatureInterval;
+            this.periodNs = periodNs;
+            this.listener = listener;
+            continuous = true;
+            if (inFlight) {
+                return;
+            }
+            inFlight = true;
+            executor = scheduler();
+        }
+        executor.execute(start);
+    }
+
+    /**
+     * Reuses B5 by age and temperature slope instead of by {@code temperatureInterval}.
+     *
+     * @param maxAgeNs the longest time B5 is reused, 0 to go back to the interval
+     * @param maxSlope the temperature slope in degrees Celsius per second up to which B5 is
+     *                 reused for {@code maxAgeNs}
+     */
+    void setTemperatureTracking(long maxAgeNs, float maxSlope) {
+        tracker.configure(maxAgeNs, maxSlope);
+        // the count since the last temperature conversion is not kept while tracking
+        b5Invalid = true;
+    }
+
+    /**
+     * Stops continuous conversions after the one in flight.
+     */
+    synchronized void stopContinuous() {
+        continuous = false;
+        temperatureInterval = 1;
+        periodNs = 0;
+        listener = null;
+    }
+
+    boolean isContinuous() {
+        return continuous;
+    }
+
+    long getPeriodNs() {
+        return periodNs;
+    }
+
+    /**
+     * Returns the error of the latest conversion.
+     *
+     * @return the error, or null if the latest conversion succeeded
+     */
+    IOException getLastError() {
+        return lastError;
+    }
+
+    synchronized void shutdown() {
+        closed = true;
+        continuous = false;
+        listener = null;
+        if (scheduler != null && scheduler != sharedScheduler) {
+            scheduler.shutdownNow();
+        }
+        scheduler = null;
+        inFlight = false;
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null && sharedScheduler != null) {
+            scheduler = sharedScheduler;
+        } else if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Bmp180-conversion");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    private void schedule(Runnable step, long delayMs) {
+        scheduleNanos(step, MILLISECONDS.toNanos(delayMs));
+    }
+
+    private void scheduleNanos(Runnable step, long delayNs) {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+        }
+        if (executor != null) {
+            executor.schedule(step, delayNs, NANOSECONDS);
+        }
+    }
+
+    private synchronized int temperatureInterval() {
+        return continuous ? temperatureInterval : 1;
+    }
+
+    /**
+     * Returns whether the pressure conversion starting at {@code startNs} needs a fresh B5.
+     */
+    private boolean temperatureDue(long startNs) {
+        if (tracker.isEnabled()) {
+            return tracker.isDue(startNs);
+        }
+        return b5Invalid || pressureSinceTemperature >= temperatureInterval();
+    }
+
+    /**
+     * Starts the next conversion of continuous mode, right away or at the next period.
+     */
+    private void continueSampling() throws IOException {
+        long period = getPeriodNs();
+        if (period == 0) {
+            startNext(temperatureDue(SystemClock.elapsedRealtimeNanos()));
+            return;
+        }
+        long now = SystemClock.elapsedRealtimeNanos();
+        nextStartNs += period;
+        // a due temperature conversion goes ahead of the tick, so the pressure one starts on it
+        long lead = temperatureDue(nextStartNs)
+                ? MILLISECONDS.toNanos(Bmp180.TEMPERATURE_DELAY_MS) : 0;
+        onSchedule = true;
+        if (nextStartNs - lead <= now) {
+            // running late: start now but stay on the grid, dropping the ticks missed entirely
+            long missed = (now + lead - nextStartNs) / period;
+            if (missed > 0) {
+                nextStartNs += missed * period;
+                device.getMetrics().missedPeriods(missed);
+            }
+            startNext(lead > 0);
+        } else {
+            scheduleNanos(lead > 0 ? startTemperature : startPressureOnTick,
+                    nextStartNs - lead - now);
+        }
+    }
+
+    /**
+     * Starts the next conversion: a temperature conversion when the B5 term is due, a pressure
+     * conversion otherwise.
+     */
+    private void startNext(boolean temperature) throws IOException {
+        try {
+            if (temperature) {
+                device.startTemperatureConversion();
+                schedule(startPressure, Bmp180.TEMPERATURE_DELAY_MS);
+            } else {
+                startPressureConversion();
+                device.getMetrics().temperatureReused();
+            }
+        } catch (ResilientTransport.RetryException e) {
+            retry(temperature ? startTemperature : startPressureOnTick, e);
+        }
+    }
+
+    /**
+     * Runs a step again once the backoff of its failed transfer has passed. The step is retried
+     * from the scheduler, so neither the device nor the transport is locked while backing off.
+     */
+    private void retry(Runnable step, ResilientTransport.RetryException error) {
+        Log.w(TAG, "retrying: " + error.getMessage());
+        scheduleNanos(step, error.getDelayNs());
+    }
+
+    private void startPressureConversion() throws IOException {
+        conversionStartNs = System.nanoTime();
+        pressureMode = device.startPressureConversion();
+        // the conversion starts once the command is written
+        long startedNs = SystemClock.elapsedRealtimeNanos();
+        conversionMidpointNs = startedNs + Bmp180.pressureConversionNs(pressureMode) / 2;
+        if (onSchedule) {
+            onSchedule = false;
+            device.getMetrics().record(Bmp180Metrics.SCHEDULING_JITTER,
+                    Math.abs(startedNs - nextStartNs));
+        }
+        schedule(finish, Bmp180.pressureDelayMs(pressureMode));
+    }
+
+    private final Runnable startTemperature = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                startNext(true);
+            } catch (IOException e) {
+                fail(e, false);
+            }
+        }
+    };
+
+    private final Runnable startPressureOnTick = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                startNext(false);
+            } catch (IOException e) {
+                fail(e, false);
+            }
+        }
+    };
+
+    /**
+     * Starts a single conversion or continuous mode: with a fresh temperature unless the tracker
+     * lets the cached B5 be reused.
+     */
+    private final Runnable start = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                b5Invalid = true;
+                nextStartNs = SystemClock.elapsedRealtimeNanos();
+                onSchedule = false;
+                startNext(temperatureDue(nextStartNs));
+            } catch (IOException e) {
+                fail(e, false);
+            }
+        }
+    };
+
+    private final Runnable startPressure = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                int raw = device.readRawTemperatureResult();
+                int fresh = device.computeB5(raw);
+                // a retry reads the temperature again, so nothing is kept until the step is done
+                startPressureConversion();
+                rawTemperature = raw;
+                b5 = fresh;
+                pressureSinceTemperature = 0;
+                b5Invalid = false;
+                tracker.update(Bmp180Calibration.computeTemperature(b5),
+                        SystemClock.elapsedRealtimeNanos());
+                device.getMetrics().temperatureConverted();
+            } catch (ResilientTransport.RetryException e) {
+                retry(this, e);
+            } catch (IOException e) {
+                fail(e, false);
+            }
+        }
+    };
+
+    private final Runnable finish = new Runnable() {
+        @Override
+        public void run() {
+            int mode = pressureMode;
+            long midpoint = conversionMidpointNs;
+            int rawPressure;
+            boolean next;
+            try {
+                rawPressure = device.readRawPressureResult(mode);
+            } catch (ResilientTransport.RetryException e) {
+                retry(this, e);
+                return;
+            } catch (IOException e) {
+                fail(e, false);
+                return;
+            }
+            device.getMetrics().record(Bmp180Metrics.CONVERSION, System.nanoTime() - conversionStartNs);
+            if (pressureSinceTemperature < Integer.MAX_VALUE) {
+                pressureSinceTemperature++;
+            }
+            next = isContinuous();
+            if (next) {
+                try {
+                    // keep the sensor busy while this sample is compensated
+                    continueSampling();
+                } catch (IOException e) {
+                    fail(e, false);
+                    return;
+                }
+            }
+            Bmp180Sample sample;
+            try {
+                sample = device.compensate(rawTemperature, b5, rawPressure, mode, midpoint);
+            } catch (IOException e) {
+                fail(e, next);
+                return;
+            }
+            lastError = null;
+            device.onSample(sample);
+            for (Bmp180.Callback callback : drain(next)) {
+                try {
+                    callback.onSample(sample);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "onSample: ", e);
+                }
+            }
+            delivering.clear();
+        }
+    };
+
+    /**
+     * Reports an error to the callbacks waiting for the conversion.
+     *
+     * @param error       the error
+     * @param nextStarted whether continuous mode already started the next conversion, which then
+     *                    carries on sampling; otherwise continuous mode restarts after a delay
+     */
+    private void fail(IOException error, boolean nextStarted) {
+        Log.e(TAG, "conversion error: ", error);
+        lastError = error;
+        boolean next = nextStarted || isContinuous();
+        for (Bmp180.Callback callback : drain(next)) {
+            try {
+                callback.onError(error);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "onError: ", e);
+            }
+        }
+        delivering.clear();
+        // the failed conversion may have read a corrupted temperature
+        tracker.invalidate();
+        b5Invalid = true;
+        if (next && !nextStarted) {
+            // retry from a fresh temperature conversion, once the breaker lets transfers through
+            long delayMs = error instanceof Bmp180Exception.CircuitOpenException
+                    ? ((Bmp180Exception.CircuitOpenException) error).getRetryAfterMs()
+                    : Bmp180.TEMPERATURE_DELAY_MS;
+            schedule(start, delayMs);
+        }
+    }
+
+    private synchronized List<Bmp180.Callback> drain(boolean keepRunning) {
+        delivering.addAll(pending);
+        pending.clear();
+        if (keepRunning && listener != null) {
+            delivering.add(listener);
+        }
+        inFlight = keepRunning;
+        return delivering;
+    }
+}
@@ -0,0 +1,31 @@
+package com.samgol.driver.bmp180;
+
+import com.google.android.things.pio.I2cDevice;
+
+import java.io.IOException;
+
+/**
+ * {@link Bmp180Transport} backed by a peripheral I/O {@link I2cDevice}.
+ */
+class I2cDeviceTransport implements Bmp180Transport {
+    private final I2cDevice mDevice;
+
+    I2cDeviceTransport(I2cDevice device) {
+        mDevice = device;
+    }
+
+    @Override
+    public void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+        I2cUtils.readBlock(mDevice, register, buffer, length);
+    }
+
+    @Override
+    public void writeRegByte(int register, byte value) throws IOException {
+        mDevice.writeRegByte(register, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDevice.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.samgol.driver.bmp180;
+
+import com.google.android.things.pio.I2cDevice;
+
+import java.io.IOException;
+
+/**
+ * A TCA9548A style I2C multiplexer: a single control byte selects which downstream channels
+ * are connected to the bus.
+ */
+class I2cMultiplexer implements AutoCloseable {
+    // the connected channels are unknown, e.g. after a failed write
+    private static final int UNKNOWN = -1;
+
+    private final I2cDevice mDevice;
+    private final byte[] mControl = new byte[1];
+    private int mConnected = UNKNOWN;
+
+    I2cMultiplexer(I2cDevice device) {
+        mDevice = device;
+    }
+
+    /**
+     * Connects the given channel only, skipping the bus write if it is connected already.
+     *
+     * @param channel the channel, 0 to 7
+     * @throws IOException if there was communication problem
+     */
+    synchronized void select(int channel) throws IOException {
+        connect(1 << channel);
+    }
+
+    /**
+     * Disconnects all channels, skipping the bus write if none is connected.
+     *
+     * @throws IOException if there was communication problem
+     */
+    synchronized void deselect() throws IOException {
+        connect(0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mConnected = UNKNOWN;
+        mDevice.close();
+    }
+
+    private void connect(int channels) throws IOException {
+        if (channels == mConnected) {
+            return;
+        }
+        mControl[0] = (byte) channels;
+        mConnected = UNKNOWN;
+        mDevice.write(mControl, 1);
+        mConnected = channels;
+    }
+}
@@ -15,15 +15,11 @@ class I2cUtils {
     private static final boolean DEBUG = false;
 
     static int readU8(I2cDevice device, int reg) throws IOException {
-        int result = 0;
-        try {
-            result = device.readRegByte(reg);
-            if (DEBUG)
-                Log.d(TAG, "readU8: (0x" + Integer.toHexString(result) +
-                        ") from reg (0x" + Integer.toHexString(reg) + ")");
-        } catch (Exception e) {
-            Log.e(TAG, "readU8: ", e);
-        }
+        // failures propagate, a 0 standing in for a failed read would be compensated as data
+        int result = device.readRegByte(reg) & 0xFF;
+        if (DEBUG)
+            Log.d(TAG, "readU8: (0x" + Integer.toHexString(result) +
+                    ") from reg (0x" + Integer.toHexString(reg) + ")");
         return result;
     }
 
@@ -49,6 +45,34 @@ class I2cUtils {
         return ((hi << 8) + lo);
     }
 
+    /**
+     * Reads {@code length} consecutive registers starting at {@code register} in a single
+     * bus transaction.
+     *
+     * @param device   the device to read from
+     * @param register the first register to read
+     * @param buffer   the destination buffer, at least {@code length} bytes long
+     * @param length   the number of bytes to read
+     * @throws IOException if there was communication problem
+     */
+    static void readBlock(I2cDevice device, int register, byte[] buffer, int length) throws IOException {
+        device.readRegBuffer(register, buffer, length);
+        if (DEBUG)
+            Log.d(TAG, "readBlock: " + length + " bytes from reg (0x" + Integer.toHexString(register) + ")");
+    }
+
+    static int u16BE(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    static int s16BE(byte[] buffer, int offset) {
+        return (buffer[offset] << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    static int u24BE(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 16) | ((buffer[offset + 1] & 0xFF) << 8) | (buffer[offset + 2] & 0xFF);
+    }
+
 //    public static int readU16LE(I2cDevice device, int register) throws IOException {
 //        int hi = readU8(device,  register);
 //        int lo = readU8(device, register + 1);
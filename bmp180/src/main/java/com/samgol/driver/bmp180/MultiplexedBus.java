@@ -0,0 +1,66 @@
+package com.samgol.driver.bmp180;
+
+import com.google.android.things.pio.I2cDevice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The multiplexers on one I2C bus. Sensors behind different multiplexers share the address
+ * {@link Bmp180#BMP180_ADDRESS}, so before one is accessed every other multiplexer on the bus is
+ * disconnected; accesses hold the lock of this object, one per bus, so the selection and the
+ * access are atomic across all multiplexers of the bus.
+ */
+class MultiplexedBus implements AutoCloseable {
+    private final List<I2cMultiplexer> mMultiplexers = new ArrayList<>();
+
+    /**
+     * Adds a multiplexer to the bus.
+     *
+     * @param device the multiplexer
+     * @return the multiplexer
+     */
+    synchronized I2cMultiplexer add(I2cDevice device) {
+        I2cMultiplexer multiplexer = new I2cMultiplexer(device);
+        mMultiplexers.add(multiplexer);
+        return multiplexer;
+    }
+
+    /**
+     * Connects one channel of one multiplexer and disconnects the channels of all the others.
+     * The caller holds the lock of this object.
+     *
+     * @param multiplexer the multiplexer, or null to only disconnect all, e.g. for a sensor
+     *                    attached to the bus directly
+     * @param channel     the channel, 0 to 7
+     * @throws IOException if there was communication problem
+     */
+    void select(I2cMultiplexer multiplexer, int channel) throws IOException {
+        for (int i = 0; i < mMultiplexers.size(); i++) {
+            I2cMultiplexer other = mMultiplexers.get(i);
+            if (other != multiplexer) {
+                other.deselect();
+            }
+        }
+        if (multiplexer != null) {
+            multiplexer.select(channel);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (I2cMultiplexer multiplexer : mMultiplexers) {
+            try {
+                multiplexer.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        mMultiplexers.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+}
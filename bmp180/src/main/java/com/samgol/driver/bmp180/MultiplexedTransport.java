@@ -0,0 +1,54 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+
+/**
+ * A sensor on a bus with {@link I2cMultiplexer}s, behind one channel of one of them or attached
+ * directly. All sensors behind the multiplexers of a bus share one transport to
+ * {@link Bmp180#BMP180_ADDRESS}; the channel is selected before each access, atomically with it,
+ * under the lock of the {@link MultiplexedBus}.
+ */
+class MultiplexedTransport implements Bmp180Transport {
+    private final MultiplexedBus mBus;
+    private final I2cMultiplexer mMultiplexer;
+    private final int mChannel;
+    private final Bmp180Transport mShared;
+
+    /**
+     * @param bus         the multiplexers of the bus
+     * @param multiplexer the multiplexer the sensor is behind, or null if it is attached directly
+     * @param channel     the multiplexer channel, 0 to 7
+     * @param shared      the transport to the sensor address on the bus
+     */
+    MultiplexedTransport(MultiplexedBus bus, I2cMultiplexer multiplexer, int channel,
+                         Bmp180Transport shared) {
+        if (multiplexer != null && (channel < 0 || channel > 7)) {
+            throw new IllegalArgumentException("channel must be between 0 and 7");
+        }
+        mBus = bus;
+        mMultiplexer = multiplexer;
+        mChannel = channel;
+        mShared = shared;
+    }
+
+    @Override
+    public void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+        synchronized (mBus) {
+            mBus.select(mMultiplexer, mChannel);
+            mShared.readRegBuffer(register, buffer, length);
+        }
+    }
+
+    @Override
+    public void writeRegByte(int register, byte value) throws IOException {
+        synchronized (mBus) {
+            mBus.select(mMultiplexer, mChannel);
+            mShared.writeRegByte(register, value);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the multiplexers and the shared transport belong to the bus manager
+    }
+}
@@ -0,0 +1,209 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps the transport of one device with bounded retries and a circuit breaker, so a flaky
+ * sensor costs its worker a bounded amount of time and then none at all until it recovers.
+ * <p>
+ * A failed transfer may be retried up to {@code maxAttempts} times, after a random time between
+ * zero and an exponentially growing bound. The transport does not wait itself, so no lock is held
+ * during the backoff: a failed attempt with attempts left throws a {@link RetryException} with
+ * the backoff, and the conversion engine retries the step from its scheduler once it has passed.
+ * Other callers see it as a failed transfer. When {@code failureThreshold} transfers in a row
+ * fail even after retrying, the breaker opens and transfers fail immediately
+ * with {@link Bmp180Exception.CircuitOpenException} for {@code openMs}. The first transfer after
+ * that is tried once: success closes the breaker, failure opens it again for twice as long, up
+ * to {@link #MAX_OPEN_MS}.
+ */
+public final class ResilientTransport implements Bmp180Transport {
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_BACKOFF_MS = 1;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 8;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MS = 1000;
+    public static final long MAX_OPEN_MS = 60000;
+
+    private static final int WRITE = 0x100;
+
+    private final Bmp180Transport delegate;
+    private final Bmp180Metrics metrics;
+    private final Random random = new Random();
+
+    // guarded by this
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseBackoffMs = DEFAULT_BASE_BACKOFF_MS;
+    private long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long openMs = DEFAULT_OPEN_MS;
+    // the transfer, register and direction, whose attempts are failing
+    private int failedTransfer = -1;
+    private int failedAttempts;
+    private int consecutiveFailures;
+    private long currentOpenMs;
+    private long openUntilNs;
+    private boolean open;
+
+    ResilientTransport(Bmp180Transport delegate, Bmp180Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets how often a failed transfer is tried and how long to back off in between.
+     *
+     * @param maxAttempts   the number of attempts per transfer, at least 1
+     * @param baseBackoffMs the bound of the first backoff
+     * @param maxBackoffMs  the bound the backoff grows to
+     */
+    public synchronized void setRetryPolicy(int maxAttempts, long baseBackoffMs, long maxBackoffMs) {
+        if (maxAttempts < 1 || baseBackoffMs < 0 || maxBackoffMs < baseBackoffMs) {
+            throw new IllegalArgumentException("invalid retry policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Sets when the breaker opens and for how long.
+     *
+     * @param failureThreshold the number of failed transfers in a row that open the breaker
+     * @param openMs           how long the breaker stays open the first time
+     */
+    public synchronized void setCircuitBreaker(int failureThreshold, long openMs) {
+        if (failureThreshold < 1 || openMs < 0 || openMs > MAX_OPEN_MS) {
+            throw new IllegalArgumentException("invalid circuit breaker");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+    }
+
+    /**
+     * Returns whether transfers are currently rejected.
+     *
+     * @return true if the breaker is open
+     */
+    public synchronized boolean isOpen() {
+        return open && System.nanoTime() < openUntilNs;
+    }
+
+    /**
+     * Closes the breaker, e.g. after the wiring was fixed.
+     */
+    public synchronized void reset() {
+        open = false;
+        failedTransfer = -1;
+        failedAttempts = 0;
+        consecutiveFailures = 0;
+        currentOpenMs = 0;
+    }
+
+    @Override
+    public synchronized void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+        int attempts = admit();
+        try {
+            delegate.readRegBuffer(register, buffer, length);
+        } catch (IOException e) {
+            throw failed(register, attempts, e);
+        }
+        succeeded(register);
+    }
+
+    @Override
+    public synchronized void writeRegByte(int register, byte value) throws IOException {
+        int attempts = admit();
+        try {
+            delegate.writeRegByte(register, value);
+        } catch (IOException e) {
+            throw failed(WRITE | register, attempts, e);
+        }
+        succeeded(WRITE | register);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Returns how many attempts the next transfer gets, or throws if the breaker is open.
+     */
+    private int admit() throws Bmp180Exception.CircuitOpenException {
+        if (!open) {
+            return maxAttempts;
+        }
+        long remainingNs = openUntilNs - System.nanoTime();
+        if (remainingNs > 0) {
+            metrics.circuitRejected();
+            throw new Bmp180Exception.CircuitOpenException("circuit breaker open",
+                    TimeUnit.NANOSECONDS.toMillis(remainingNs) + 1);
+        }
+        // half open: one probe, no retries
+        return 1;
+    }
+
+    private void succeeded(int transfer) {
+        if (transfer == failedTransfer) {
+            failedTransfer = -1;
+            failedAttempts = 0;
+        }
+        open = false;
+        consecutiveFailures = 0;
+        currentOpenMs = 0;
+    }
+
+    /**
+     * Returns the error for a failed attempt: a {@link RetryException} while the transfer has
+     * attempts left, the failure of the transfer otherwise. The attempts are counted per
+     * transfer, so a retried step whose other transfers succeed still gives up.
+     */
+    private Bmp180Exception failed(int transfer, int attempts, IOException error) {
+        metrics.i2cError();
+        if (transfer != failedTransfer) {
+            failedTransfer = transfer;
+            failedAttempts = 0;
+        }
+        if (++failedAttempts < attempts) {
+            metrics.retry();
+            long bound = Math.min(maxBackoffMs, baseBackoffMs << (failedAttempts - 1));
+            // full jitter keeps devices sharing a noisy bus from retrying in lockstep
+            long delayNs = (long) (random.nextDouble() * TimeUnit.MILLISECONDS.toNanos(bound));
+            return new RetryException(failedAttempts, delayNs, error);
+        }
+        failedTransfer = -1;
+        failedAttempts = 0;
+        if (open || ++consecutiveFailures >= failureThreshold) {
+            currentOpenMs = open ? Math.min(MAX_OPEN_MS, Math.max(1, currentOpenMs) * 2) : openMs;
+            open = true;
+            openUntilNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(currentOpenMs);
+            metrics.circuitOpened();
+        }
+        return new Bmp180Exception("bus transfer failed after " + attempts + " attempts", error);
+    }
+
+    /**
+     * A failed attempt of a transfer that may be retried after the backoff.
+     */
+    static final class RetryException extends Bmp180Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final long delayNs;
+
+        RetryException(int attempt, long delayNs, IOException cause) {
+            super("bus transfer attempt " + attempt + " failed", cause);
+            this.delayNs = delayNs;
+        }
+
+        /**
+         * Returns how long to back off before retrying.
+         *
+         * @return the backoff in nanoseconds
+         */
+        long getDelayNs() {
+            return delayNs;
+        }
+    }
+}
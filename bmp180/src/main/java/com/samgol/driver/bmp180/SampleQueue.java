@@ -0,0 +1,85 @@
+package com.samgol.driver.bmp180;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue of samples with a single producer and a single consumer. When full,
+ * the producer either gives up or discards the oldest sample, so it never waits for the
+ * consumer.
+ */
+class SampleQueue {
+    private final AtomicReferenceArray<Bmp180Sample> slots;
+    private final int capacity;
+    // only ever increase; head is advanced by the consumer, and by the producer when discarding
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // written by the producer only
+    private volatile long discarded;
+
+    SampleQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Appends a sample. Called by the producer only.
+     *
+     * @param sample        the sample
+     * @param discardOldest whether to make room by discarding the oldest sample when full
+     * @return false if the queue was full and nothing was discarded, true otherwise
+     */
+    boolean offer(Bmp180Sample sample, boolean discardOldest) {
+        long t = tail.get();
+        while (t - head.get() >= capacity) {
+            if (!discardOldest) {
+                return false;
+            }
+            long h = head.get();
+            // racing with the consumer: either of us takes the oldest sample
+            if (t - h >= capacity && head.compareAndSet(h, h + 1)) {
+                discarded++;
+            }
+        }
+        slots.set((int) (t % capacity), sample);
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest sample. Called by the consumer only.
+     *
+     * @return the oldest sample, or null if the queue is empty
+     */
+    Bmp180Sample poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            Bmp180Sample sample = slots.get((int) (h % capacity));
+            // fails if the producer discarded the sample, and maybe overwrote it, meanwhile
+            if (head.compareAndSet(h, h + 1)) {
+                return sample;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of samples discarded to make room.
+     */
+    long getDiscarded() {
+        return discarded;
+    }
+
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+}
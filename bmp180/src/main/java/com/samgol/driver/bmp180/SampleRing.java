@@ -0,0 +1,78 @@
+package com.samgol.driver.bmp180;
+
+import android.os.SystemClock;
+
+/**
+ * A bounded FIFO of samples. When full, the oldest sample is overwritten so consumers always
+ * drain the most recent history.
+ */
+class SampleRing {
+    private final Bmp180Sample[] samples;
+
+    // guarded by this
+    private int head;
+    private int size;
+    private long dropped;
+
+    SampleRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        samples = new Bmp180Sample[capacity];
+    }
+
+    synchronized void offer(Bmp180Sample sample) {
+        if (size == samples.length) {
+            head = (head + 1) % samples.length;
+            size--;
+            dropped++;
+        }
+        samples[(head + size) % samples.length] = sample;
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * Removes the oldest sample, waiting up to {@code timeoutMs} for one to arrive.
+     *
+     * @param timeoutMs how long to wait
+     * @return the oldest sample, or null if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized Bmp180Sample poll(long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        while (size == 0) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+        }
+        Bmp180Sample sample = samples[head];
+        samples[head] = null;
+        head = (head + 1) % samples.length;
+        size--;
+        return sample;
+    }
+
+    synchronized void clear() {
+        while (size > 0) {
+            samples[head] = null;
+            head = (head + 1) % samples.length;
+            size--;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of samples overwritten before they were consumed.
+     *
+     * @return the number of samples overwritten before they were consumed.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,260 @@
+package com.samgol.driver.bmp180;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sea level pressure (QNH) altitudes are computed against. It can be set directly, read from
+ * a file or a stream such as a socket, watched in a file, or derived from the pressure measured
+ * at a known altitude.
+ * <p>
+ * The value is a single volatile field that the conversion thread reads once per sample, so an
+ * update never waits for a conversion and never stalls one: every sample uses either the old or
+ * the new value. The altitude table is indexed by the ratio of pressure to sea level pressure and
+ * needs no rebuilding. One reference can be shared by several devices with
+ * {@link Bmp180#setSeaLevelReference(SeaLevelReference)}.
+ * <p>
+ * Files and streams hold one value per line, in hectopascal (e.g. {@code 1013.2}) or, from
+ * {@value #MIN_PRESSURE} up, in Pascal; empty lines and lines starting with {@code #} are
+ * skipped. A line that holds no valid value is logged, counted in {@link #getErrorCount()} and
+ * skipped too, so one bad line does not end a stream.
+ */
+public final class SeaLevelReference implements AutoCloseable {
+    private static final String TAG = SeaLevelReference.class.getSimpleName();
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    public static final float STANDARD_PRESSURE = 101325f;
+    /**
+     * The lowest accepted sea level pressure in Pascal, below the lowest one ever recorded.
+     */
+    public static final float MIN_PRESSURE = 85000f;
+    /**
+     * The highest accepted sea level pressure in Pascal, above the highest one ever recorded.
+     */
+    public static final float MAX_PRESSURE = 110000f;
+
+    private static final double POW_FACT = 0.1903;
+    private static final double SCALE = 44330.0;
+
+    private volatile float pressure;
+    private final AtomicLong updateCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    // guarded by this
+    private ScheduledExecutorService watcher;
+    private long watchedModified;
+    private long watchedLength;
+
+    public SeaLevelReference() {
+        this(STANDARD_PRESSURE);
+    }
+
+    /**
+     * @param pressure the initial sea level pressure in Pascal
+     */
+    public SeaLevelReference(float pressure) {
+        this.pressure = check(pressure);
+    }
+
+    /**
+     * Returns the sea level pressure.
+     *
+     * @return the sea level pressure in Pascal
+     */
+    public float get() {
+        return pressure;
+    }
+
+    /**
+     * Sets the sea level pressure; samples compensated from now on use it.
+     *
+     * @param pressure the sea level pressure in Pascal
+     */
+    public void set(float pressure) {
+        this.pressure = check(pressure);
+        updateCount.incrementAndGet();
+    }
+
+    /**
+     * Sets the sea level pressure without the range check, for
+     * {@link Bmp180#setStandardSeaLevelPressure(int)}, which has always taken any value.
+     *
+     * @param pressure the sea level pressure in Pascal
+     */
+    void setUnchecked(float pressure) {
+        this.pressure = pressure;
+        updateCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of updates since creation, e.g. to tell whether a source is alive.
+     *
+     * @return the number of updates
+     */
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
+    /**
+     * Returns the number of lines read from files and streams that held no valid value.
+     *
+     * @return the number of invalid lines
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Sets the sea level pressure so that {@code measuredPressure} corresponds to the known
+     * altitude, e.g. the elevation of the site or of a runway.
+     *
+     * @param knownAltitude    the altitude in meters
+     * @param measuredPressure the pressure measured there in Pascal
+     * @return the new sea level pressure in Pascal
+     */
+    public float zero(float knownAltitude, float measuredPressure) {
+        // the inverse of Altitude.fromPressure
+        float seaLevel = (float) (measuredPressure
+                / Math.pow(1.0 - knownAltitude / SCALE, 1.0 / POW_FACT));
+        set(seaLevel);
+        return seaLevel;
+    }
+
+    /**
+     * Sets the sea level pressure from the last value in a file.
+     *
+     * @param file the file
+     * @return true if the file held a valid value
+     * @throws IOException if the file could not be read
+     */
+    public boolean load(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return follow(in) > 0;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Applies every value read from the stream until it ends, e.g. from a socket a QNH service
+     * writes to. Blocks the calling thread.
+     *
+     * @param in the stream
+     * @return the number of values applied
+     * @throws IOException if the stream failed
+     */
+    public int follow(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, US_ASCII));
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                set(parse(line));
+            } catch (Bmp180Exception e) {
+                errorCount.incrementAndGet();
+                Log.w(TAG, e.getMessage());
+                continue;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reloads the file on a background thread whenever it changes, checking every
+     * {@code periodMs}. Replaces any file watched before.
+     *
+     * @param file     the file
+     * @param periodMs how often to check the file
+     */
+    public synchronized void watch(final File file, long periodMs) {
+        stopWatching();
+        watchedModified = 0;
+        watchedLength = -1;
+        watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        watcher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll(file);
+            }
+        }, 0, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stopWatching();
+    }
+
+    private synchronized void poll(File file) {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == 0 || (modified == watchedModified && length == watchedLength)) {
+            return;
+        }
+        watchedModified = modified;
+        watchedLength = length;
+        try {
+            load(file);
+        } catch (IOException e) {
+            // keep the last good value, a partly written file is read again once it changes
+            Log.e(TAG, "could not read " + file + ": ", e);
+        }
+    }
+
+    private static float parse(String line) throws Bmp180Exception {
+        float value;
+        try {
+            value = Float.parseFloat(line);
+        } catch (NumberFormatException e) {
+            throw new Bmp180Exception("invalid sea level pressure: " + line, e);
+        }
+        if (value < MIN_PRESSURE) {
+            value *= 100;
+        }
+        if (!(value >= MIN_PRESSURE && value <= MAX_PRESSURE)) {
+            throw new Bmp180Exception("sea level pressure out of range: " + line);
+        }
+        return value;
+    }
+
+    private static float check(float pressure) {
+        if (!(pressure >= MIN_PRESSURE && pressure <= MAX_PRESSURE)) {
+            throw new IllegalArgumentException("sea level pressure out of range: " + pressure);
+        }
+        return pressure;
+    }
+}
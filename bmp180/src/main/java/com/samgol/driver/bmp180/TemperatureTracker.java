@@ -0,0 +1,99 @@
+package com.samgol.driver.bmp180;
+
+/**
+ * Decides when the B5 term of the last temperature conversion is too stale to compensate
+ * another pressure conversion. The term is reused for at most {@code maxAge}, and for less when
+ * the temperature changes faster than {@code maxSlope}: the age limit shrinks in proportion to
+ * the measured slope, so the expected drift between conversions stays below
+ * {@code maxSlope * maxAge}.
+ * <p>
+ * The slope is measured between consecutive temperature conversions; it follows a steeper slope
+ * at once and a flatter one gradually, and a change of one 0.1 C step is taken as quantization,
+ * not as a trend. A change of slope is noticed at the next temperature conversion, so until then
+ * the drift is bounded only by {@code maxAge}. The configuration may be changed from any
+ * thread, the state is accessed only on the conversion thread.
+ */
+class TemperatureTracker {
+    // weight of the newest measurement when the slope decays
+    private static final double SMOOTHING = 0.5;
+
+    // guarded by this
+    private long maxAgeNs;
+    private float maxSlope;
+
+    private boolean valid;
+    private long convertedAt;
+    private int temperature;
+    private double slope;
+
+    /**
+     * @param maxAgeNs the longest time B5 is reused, 0 to disable tracking
+     * @param maxSlope the temperature slope in degrees Celsius per second up to which B5 is
+     *                 reused for {@code maxAgeNs}, ignored when tracking is disabled
+     */
+    synchronized void configure(long maxAgeNs, float maxSlope) {
+        if (maxAgeNs < 0) {
+            throw new IllegalArgumentException("maxAge must not be negative");
+        }
+        if (maxAgeNs > 0 && !(maxSlope > 0)) {
+            throw new IllegalArgumentException("maxSlope must be positive");
+        }
+        this.maxAgeNs = maxAgeNs;
+        this.maxSlope = maxSlope;
+    }
+
+    synchronized boolean isEnabled() {
+        return maxAgeNs > 0;
+    }
+
+    /**
+     * Returns whether a temperature conversion is needed before a pressure conversion at
+     * {@code now}.
+     */
+    boolean isDue(long now) {
+        long maxAge;
+        float limit;
+        synchronized (this) {
+            maxAge = maxAgeNs;
+            limit = maxSlope;
+        }
+        if (!valid) {
+            return true;
+        }
+        long age = now - convertedAt;
+        return age >= maxAge || slope * age > (double) limit * maxAge;
+    }
+
+    /**
+     * Records a temperature conversion.
+     *
+     * @param temperature the temperature in 0.1 degrees Celsius
+     * @param now         the time of the conversion in nanoseconds
+     */
+    void update(int temperature, long now) {
+        long elapsed = now - convertedAt;
+        if (valid && elapsed > 0) {
+            int change = Math.max(0, Math.abs(temperature - this.temperature) - 1);
+            double measured = change * 0.1 / (elapsed * 1e-9);
+            slope = measured > slope ? measured : slope + SMOOTHING * (measured - slope);
+        }
+        valid = true;
+        convertedAt = now;
+        this.temperature = temperature;
+    }
+
+    /**
+     * Forgets the last conversion, e.g. after an error, so the next one converts the
+     * temperature. The slope is kept.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Returns the smoothed absolute temperature slope in degrees Celsius per second.
+     */
+    double getSlope() {
+        return slope;
+    }
+}
@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * JVM stand-in for the framework class, whose android.jar stub throws in local unit tests.
+ */
+public final class SystemClock {
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,100 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes the reading thread allocates on the hot path, with the per-thread
+ * allocation counter of the HotSpot JVM. The conversion thread still allocates one immutable
+ * {@link Bmp180Sample} per conversion; that is how a sample is published safely.
+ */
+public class AllocationTest {
+    private static final int CALLS = 100000;
+
+    private com.sun.management.ThreadMXBean threads;
+    private Bmp180 device;
+    private float[] lastValues;
+
+    @Before
+    public void setUp() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("per-thread allocation counting is not available",
+                bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        device = new Bmp180(new Bmp180Simulator());
+        device.startContinuous(10, null);
+        AwaitingCallback.convert(device);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (device != null) {
+            device.close();
+        }
+    }
+
+    @Test
+    public void readIntoDoesNotAllocate() throws IOException {
+        float[] values = new float[3];
+        for (int i = 0; i < CALLS; i++) {
+            device.readInto(values, 0);
+        }
+        long before = allocated();
+        for (int i = 0; i < CALLS; i++) {
+            device.readInto(values, 0);
+        }
+        long bytes = allocated() - before;
+        assertTrue(bytes + " bytes for " + CALLS + " reads", bytes < CALLS);
+    }
+
+    @Test
+    public void readAllValuesAllocatesAnArrayPerCall() throws IOException {
+        // shows that the counter sees the allocations readInto avoids; the arrays are kept in a
+        // field so the JIT cannot take them apart
+        for (int i = 0; i < CALLS; i++) {
+            lastValues = device.readAllValues();
+        }
+        long before = allocated();
+        for (int i = 0; i < CALLS; i++) {
+            lastValues = device.readAllValues();
+        }
+        long bytes = allocated() - before;
+        assertTrue(bytes + " bytes for " + CALLS + " reads", bytes >= 16L * CALLS);
+    }
+
+    @Test
+    public void compensationDoesNotAllocate() {
+        Bmp180Calibration calibration = Bmp180Simulator.DATASHEET_CALIBRATION;
+        long sum = compensate(calibration);
+        long before = allocated();
+        sum += compensate(calibration);
+        long bytes = allocated() - before;
+        assertTrue(bytes + " bytes for " + CALLS + " samples", bytes < CALLS);
+        assertTrue(sum != 0);
+    }
+
+    private static long compensate(Bmp180Calibration calibration) {
+        long sum = 0;
+        for (int i = 0; i < CALLS; i++) {
+            int mode = i & 3;
+            int b5 = calibration.computeB5(27000 + (i & 1023));
+            int pressure = calibration.computePressure(b5, (23843 + (i & 255)) << mode, mode);
+            sum += Bmp180Calibration.computeTemperature(b5) + pressure
+                    + (long) Altitude.fromPressure(pressure, 101325f);
+        }
+        return sum;
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
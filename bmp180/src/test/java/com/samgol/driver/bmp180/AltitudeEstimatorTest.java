@@ -0,0 +1,88 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the estimator a synthetic climb carrying the altitude noise of the standard mode.
+ */
+public class AltitudeEstimatorTest {
+    private static final long PERIOD_NS = 10000000L;
+    private static final float CLIMB_M_S = 2;
+
+    @Test
+    public void isUndefinedBeforeTheFirstSample() {
+        AltitudeEstimator estimator = new AltitudeEstimator();
+        float[] values = new float[2];
+        estimator.copyTo(values, 0);
+        assertTrue(Float.isNaN(values[0]));
+        assertTrue(Float.isNaN(values[1]));
+        assertTrue(Float.isNaN(estimator.getAltitude()));
+
+        estimator.update(100, 0);
+        assertEquals(100, estimator.getAltitude(), 0);
+        assertEquals(0, estimator.getVerticalSpeed(), 0);
+        estimator.reset();
+        assertTrue(Float.isNaN(estimator.getVerticalSpeed()));
+    }
+
+    @Test
+    public void convergesOnAConstantClimb() {
+        AltitudeEstimator estimator = new AltitudeEstimator();
+        Random random = new Random(1);
+        // after 30 s the estimate has settled
+        long timestamp = climb(estimator, 0, 3000, random);
+        double speedError = 0;
+        double altitudeError = 0;
+        int samples = 2000;
+        for (int i = 0; i < samples; i++) {
+            double truth = CLIMB_M_S * timestamp * 1e-9;
+            timestamp = climb(estimator, timestamp, 1, random);
+            speedError += square(estimator.getVerticalSpeed() - CLIMB_M_S);
+            altitudeError += square(estimator.getAltitude() - truth);
+        }
+        speedError = Math.sqrt(speedError / samples);
+        altitudeError = Math.sqrt(altitudeError / samples);
+        assertTrue("speed rms error " + speedError, speedError < 0.3);
+        // smoother than the samples themselves
+        assertTrue("altitude rms error " + altitudeError,
+                altitudeError < AltitudeEstimator.DEFAULT_ALTITUDE_NOISE_M);
+    }
+
+    @Test
+    public void restartsAfterAGap() {
+        AltitudeEstimator estimator = new AltitudeEstimator();
+        long last = climb(estimator, 0, 1000, new Random(1)) - PERIOD_NS;
+        assertEquals(CLIMB_M_S, estimator.getVerticalSpeed(), 0.5);
+
+        // a gap of exactly the limit keeps the estimate
+        last += AltitudeEstimator.MAX_GAP_NS;
+        estimator.update(CLIMB_M_S * last * 1e-9f, last);
+        assertEquals(CLIMB_M_S, estimator.getVerticalSpeed(), 0.5);
+
+        // a longer one starts over from the next sample
+        last += AltitudeEstimator.MAX_GAP_NS + 1;
+        estimator.update(42, last);
+        assertEquals(42, estimator.getAltitude(), 0);
+        assertEquals(0, estimator.getVerticalSpeed(), 0);
+    }
+
+    // feeds noisy samples of the climb one period apart, returns the timestamp of the next one
+    private static long climb(AltitudeEstimator estimator, long timestamp, int count,
+                              Random random) {
+        for (int i = 0; i < count; i++, timestamp += PERIOD_NS) {
+            float altitude = (float) (CLIMB_M_S * timestamp * 1e-9
+                    + AltitudeEstimator.DEFAULT_ALTITUDE_NOISE_M * random.nextGaussian());
+            estimator.update(altitude, timestamp);
+        }
+        return timestamp;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
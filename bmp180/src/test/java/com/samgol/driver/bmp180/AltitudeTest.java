@@ -0,0 +1,43 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AltitudeTest {
+
+    @Test
+    public void staysWithinTheDocumentedErrorBound() {
+        float seaLevel = 101325f;
+        double worst = 0;
+        double worstAbove08 = 0;
+        for (float pressure = 0.25f * seaLevel; pressure <= 1.25f * seaLevel; pressure += 0.5f) {
+            double error = Math.abs(Altitude.fromPressure(pressure, seaLevel)
+                    - DatasheetReference.altitude(pressure, seaLevel));
+            worst = Math.max(worst, error);
+            if (pressure / seaLevel > 0.8f) {
+                worstAbove08 = Math.max(worstAbove08, error);
+            }
+        }
+        assertTrue("error " + worst + " m", worst < 0.05);
+        assertTrue("error " + worstAbove08 + " m", worstAbove08 < 0.006);
+    }
+
+    @Test
+    public void servesAnySeaLevelPressure() {
+        for (float seaLevel = 95000f; seaLevel <= 105000f; seaLevel += 250f) {
+            assertEquals(DatasheetReference.altitude(90000f, seaLevel),
+                    Altitude.fromPressure(90000f, seaLevel), 0.006f);
+        }
+        assertEquals(0f, Altitude.fromPressure(101325f, 101325f), 0.006f);
+    }
+
+    @Test
+    public void fallsBackToTheFormulaOutsideTheTable() {
+        assertEquals(DatasheetReference.altitude(10000f, 101325f),
+                Altitude.fromPressure(10000f, 101325f), 0f);
+        assertEquals(DatasheetReference.altitude(130000f, 101325f),
+                Altitude.fromPressure(130000f, 101325f), 0f);
+    }
+}
@@ -0,0 +1,49 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A callback a test can wait on.
+ */
+class AwaitingCallback implements Bmp180.Callback {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Bmp180Sample sample;
+    private volatile IOException error;
+
+    /**
+     * Runs a fresh conversion and waits for its sample.
+     */
+    static Bmp180Sample convert(Bmp180 device) throws IOException {
+        AwaitingCallback callback = new AwaitingCallback();
+        device.readAsync(callback);
+        return callback.await();
+    }
+
+    @Override
+    public void onSample(Bmp180Sample sample) {
+        this.sample = sample;
+        done.countDown();
+    }
+
+    @Override
+    public void onError(IOException e) {
+        error = e;
+        done.countDown();
+    }
+
+    Bmp180Sample await() throws IOException {
+        try {
+            if (!done.await(5, TimeUnit.SECONDS)) {
+                throw new AssertionError("no conversion within 5 s");
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        if (error != null) {
+            throw error;
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,465 @@
+package com.samgol.driver.bmp180;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the per-sample cost of the driver hot paths: the integer compensation, the altitude
+ * conversion, the register decoding and end-to-end acquisition against a {@link Bmp180Simulator}.
+ * Every case reports operations per second and bytes allocated per operation, per
+ * {@link Bmp180.Mode} where the mode matters. Runs on the JVM with {@link #main(String[])};
+ * allocations are counted where the JVM reports per-thread allocated bytes, otherwise they are
+ * reported as NaN.
+ */
+public final class Bmp180Benchmark {
+    private static final String TAG = Bmp180Benchmark.class.getSimpleName();
+
+    private static final int BATCH = 1000;
+    private static final int[] MODES = {Bmp180.BMP180_ULTRA_LOW_POWER, Bmp180.BMP180_STANDARD,
+            Bmp180.BMP180_HIGH_RES, Bmp180.BMP180_ULTRA_HIGH_RES};
+
+    // typical RMS pressure noise per mode, from the datasheet
+    private static final float[] RMS_NOISE_PA = {6, 5, 4, 3};
+    private static final int FILTER_SAMPLES = 20000;
+    private static final int REPLAY_SAMPLES = 100000;
+
+    // keeps the results of the measured code alive
+    private static volatile long sink;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean COUNTS_ALLOCATIONS = THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+    /**
+     * The outcome of one benchmark case.
+     */
+    public static final class Result {
+        public final String name;
+        public final int mode;
+        public final double opsPerSecond;
+        public final double bytesPerOp;
+
+        Result(String name, int mode, double opsPerSecond, double bytesPerOp) {
+            this.name = name;
+            this.mode = mode;
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s mode=%2d %14.1f ops/s %10.3f bytes/op",
+                    name, mode, opsPerSecond, bytesPerOp);
+        }
+    }
+
+    /**
+     * The noise and latency of one filter configuration.
+     */
+    public static final class FilterResult {
+        public final String name;
+        public final int mode;
+        public final double noisePa;
+        public final double latencyMs;
+
+        FilterResult(String name, int mode, double noisePa, double latencyMs) {
+            this.name = name;
+            this.mode = mode;
+            this.noisePa = noisePa;
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s mode=%2d %8.2f Pa rms %8.1f ms latency",
+                    name, mode, noisePa, latencyMs);
+        }
+    }
+
+    private interface Case {
+        long run(int iterations);
+    }
+
+    private Bmp180Benchmark() {
+    }
+
+    /**
+     * Runs every case and prints the results.
+     *
+     * @param args the measuring time per case in milliseconds, 1000 if omitted
+     */
+    public static void main(String[] args) throws IOException {
+        long durationMs = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        for (Result result : runAll(durationMs)) {
+            System.out.println(result);
+        }
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        System.out.println(recorder(directory, durationMs));
+        System.out.println(replay(directory, durationMs));
+        for (FilterResult result : filters()) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * Runs every case and logs the results.
+     *
+     * @param durationMs how long to measure each case
+     * @return the results
+     * @throws IOException if the simulated acquisition failed
+     */
+    public static List<Result> runAll(long durationMs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (int mode : MODES) {
+            results.add(compensation(mode, durationMs));
+        }
+        for (int mode : MODES) {
+            results.add(batchCompensation(mode, durationMs));
+        }
+        results.add(altitude(false, durationMs));
+        results.add(altitude(true, durationMs));
+        results.add(estimator(durationMs));
+        results.add(decoding(durationMs));
+        for (int mode : MODES) {
+            results.add(acquisition(mode, durationMs));
+        }
+        for (Result result : results) {
+            Log.i(TAG, result.toString());
+        }
+        return results;
+    }
+
+    /**
+     * Measures B5, temperature and pressure compensation of one sample.
+     */
+    public static Result compensation(final int mode, long durationMs) {
+        final Bmp180Calibration calibration = Bmp180Simulator.DATASHEET_CALIBRATION;
+        return measure("compensation", mode, durationMs, new Case() {
+            @Override
+            public long run(int iterations) {
+                long acc = 0;
+                for (int i = 0; i < iterations; i++) {
+                    int B5 = calibration.computeB5(27898 + (i & 255));
+                    acc += Bmp180Calibration.computeTemperature(B5);
+                    acc += calibration.computePressure(B5, (23843 << mode) + (i & 1023), mode);
+                }
+                return acc;
+            }
+        });
+    }
+
+    /**
+     * Measures {@link Bmp180Compensator} on batches of {@value #BATCH} samples with the raw
+     * temperature changing every tenth sample, as recorded by continuous sampling.
+     */
+    public static Result batchCompensation(final int mode, long durationMs) {
+        final int[] rawTemperature = new int[BATCH];
+        final int[] rawPressure = new int[BATCH];
+        final int[] pressure = new int[BATCH];
+        final float[] temperature = new float[BATCH];
+        final float[] altitude = new float[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            rawTemperature[i] = 27898 + i / 10;
+            rawPressure[i] = (23843 << mode) + i;
+        }
+        return measure("batch compensation", mode, durationMs, new Case() {
+            @Override
+            public long run(int iterations) {
+                Bmp180Compensator.compensate(Bmp180Simulator.DATASHEET_CALIBRATION, mode,
+                        rawTemperature, rawPressure, 0, iterations, pressure, temperature,
+                        altitude, 101325);
+                return pressure[iterations - 1];
+            }
+        });
+    }
+
+    /**
+     * Measures the pressure to altitude conversion, with the table or with {@link Math#pow}.
+     */
+    public static Result altitude(final boolean exact, long durationMs) {
+        return measure(exact ? "altitude (Math.pow)" : "altitude (table)", -1, durationMs, new Case() {
+            @Override
+            public long run(int iterations) {
+                float acc = 0;
+                for (int i = 0; i < iterations; i++) {
+                    float pressure = 90000 + (i & 8191);
+                    acc += exact ? Altitude.fromPressureExact(pressure, 101325)
+                            : Altitude.fromPressure(pressure, 101325);
+                }
+                return (long) acc;
+            }
+        });
+    }
+
+    /**
+     * Measures one update of the {@link AltitudeEstimator} at a 100 Hz sample rate.
+     */
+    public static Result estimator(long durationMs) {
+        final AltitudeEstimator estimator = new AltitudeEstimator();
+        return measure("altitude estimator", -1, durationMs, new Case() {
+            private long timestamp;
+
+            @Override
+            public long run(int iterations) {
+                for (int i = 0; i < iterations; i++) {
+                    timestamp += 10000000;
+                    estimator.update((i & 15) * 0.1f, timestamp);
+                }
+                return (long) estimator.getVerticalSpeed();
+            }
+        });
+    }
+
+    /**
+     * Measures decoding of the calibration EEPROM and of a raw pressure sample.
+     */
+    public static Result decoding(long durationMs) {
+        final byte[] eeprom = new byte[Bmp180Calibration.LENGTH + 3];
+        Bmp180Simulator.DATASHEET_CALIBRATION.toEeprom(eeprom, 0);
+        return measure("decoding", -1, durationMs, new Case() {
+            @Override
+            public long run(int iterations) {
+                long acc = 0;
+                for (int i = 0; i < iterations; i++) {
+                    eeprom[Bmp180Calibration.LENGTH] = (byte) i;
+                    acc += I2cUtils.u24BE(eeprom, Bmp180Calibration.LENGTH);
+                    for (int offset = 0; offset < Bmp180Calibration.LENGTH; offset += 2) {
+                        acc += I2cUtils.s16BE(eeprom, offset) + I2cUtils.u16BE(eeprom, offset);
+                    }
+                }
+                return acc;
+            }
+        });
+    }
+
+    /**
+     * Measures the achieved sample rate of continuous sampling against the simulator, which
+     * honors the datasheet conversion times.
+     */
+    public static Result acquisition(int mode, long durationMs) throws IOException {
+        final AtomicLong samples = new AtomicLong();
+        Bmp180 device = new Bmp180(new Bmp180Simulator());
+        try {
+            device.setMode(mode);
+            // the samples are converted on the device thread, so count every thread
+            Allocations allocations = new Allocations(true);
+            long start = System.nanoTime();
+            device.startContinuous(10, new Bmp180.Callback() {
+                @Override
+                public void onSample(Bmp180Sample sample) {
+                    samples.incrementAndGet();
+                }
+
+                @Override
+                public void onError(IOException e) {
+                }
+            });
+            try {
+                Thread.sleep(durationMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            device.stopContinuous();
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocations.bytes();
+            long count = Math.max(samples.get(), 1);
+            return new Result("acquisition", mode, count * 1e9 / elapsed, perOp(allocated, count));
+        } finally {
+            device.close();
+        }
+    }
+
+    /**
+     * Measures appending records to a {@link Bmp180Recorder} log in {@code directory}. The log is
+     * deleted afterwards.
+     */
+    public static Result recorder(File directory, long durationMs) throws IOException {
+        File path = new File(directory, "bmp180-benchmark.log");
+        final Bmp180Sample sample = new Bmp180Sample(101325, 15.0f, 0.0f, 0, 27898, 23843,
+                Bmp180.BMP180_ULTRA_LOW_POWER);
+        final Bmp180Recorder recorder = new Bmp180Recorder(path, 65536,
+                Bmp180Simulator.DATASHEET_CALIBRATION);
+        try {
+            return measure("recorder", -1, durationMs, new Case() {
+                @Override
+                public long run(int iterations) {
+                    for (int i = 0; i < iterations; i++) {
+                        recorder.onSample(sample);
+                    }
+                    return recorder.getRecordCount();
+                }
+            });
+        } finally {
+            recorder.close();
+            if (!path.delete()) {
+                Log.w(TAG, "Could not delete " + path);
+            }
+        }
+    }
+
+    /**
+     * Measures replaying a {@link Bmp180Recorder} log through the full driver pipeline with
+     * {@link Bmp180Replay}, in samples per second. The log is written to {@code directory} and
+     * deleted afterwards.
+     */
+    public static Result replay(File directory, long durationMs) throws IOException {
+        File path = new File(directory, "bmp180-replay.log");
+        Bmp180Recorder recorder = new Bmp180Recorder(path, REPLAY_SAMPLES,
+                Bmp180Simulator.DATASHEET_CALIBRATION);
+        try {
+            for (int i = 0; i < REPLAY_SAMPLES; i++) {
+                recorder.onSample(new Bmp180Sample(0, 0, 0, i * 5000000L, 27898 + (i & 255),
+                        23843 + (i & 1023), Bmp180.BMP180_ULTRA_LOW_POWER));
+            }
+        } finally {
+            recorder.close();
+        }
+        try {
+            long samples = 0;
+            Allocations allocations = new Allocations(false);
+            long start = System.nanoTime();
+            long deadline = start + durationMs * 1000000L;
+            long now;
+            do {
+                Bmp180Replay replay = new Bmp180Replay(path);
+                Bmp180 device = new Bmp180(replay);
+                try {
+                    device.setPressureFilter(Bmp180Filter.median(5));
+                    samples += replay.run(device, null);
+                } finally {
+                    device.close();
+                }
+                now = System.nanoTime();
+            } while (now < deadline);
+            long allocated = allocations.bytes();
+            return new Result("replay", Bmp180.BMP180_ULTRA_LOW_POWER, samples * 1e9 / (now - start),
+                    perOp(allocated, samples));
+        } finally {
+            if (!path.delete()) {
+                Log.w(TAG, "Could not delete " + path);
+            }
+        }
+    }
+
+    /**
+     * Compares pressure noise against latency for the filter configurations, fed with samples
+     * carrying the datasheet RMS noise of each mode at the continuous sampling rate of that mode.
+     * The latency is the conversion time plus the filter delay.
+     *
+     * @return the results
+     */
+    public static List<FilterResult> filters() {
+        List<FilterResult> results = new ArrayList<>();
+        for (int mode : MODES) {
+            results.add(filter("none", null, mode));
+        }
+        int mode = Bmp180.BMP180_ULTRA_LOW_POWER;
+        results.add(filter("moving average 4", Bmp180Filter.movingAverage(4), mode));
+        results.add(filter("moving average 16", Bmp180Filter.movingAverage(16), mode));
+        results.add(filter("exponential 0.25", Bmp180Filter.exponential(0.25f), mode));
+        results.add(filter("exponential 0.0625", Bmp180Filter.exponential(0.0625f), mode));
+        results.add(filter("median 5", Bmp180Filter.median(5), mode));
+        results.add(filter("median 9", Bmp180Filter.median(9), mode));
+        for (FilterResult result : results) {
+            Log.i(TAG, result.toString());
+        }
+        return results;
+    }
+
+    private static FilterResult filter(String name, Bmp180Filter filter, int mode) {
+        Random random = new Random(1);
+        double sum = 0;
+        double sumOfSquares = 0;
+        int warmup = 100;
+        for (int i = 0; i < FILTER_SAMPLES + warmup; i++) {
+            float value = (float) (RMS_NOISE_PA[mode] * random.nextGaussian());
+            if (filter != null) {
+                value = filter.apply(value);
+            }
+            if (i >= warmup) {
+                sum += value;
+                sumOfSquares += value * value;
+            }
+        }
+        double mean = sum / FILTER_SAMPLES;
+        double noise = Math.sqrt(sumOfSquares / FILTER_SAMPLES - mean * mean);
+        // continuous sampling with one temperature conversion per ten pressure conversions
+        double periodMs = Bmp180.pressureDelayMs(mode) + Bmp180.TEMPERATURE_DELAY_MS / 10.0;
+        double delay = filter != null ? filter.getDelay() : 0;
+        return new FilterResult(name, mode, noise, Bmp180.pressureDelayMs(mode) + delay * periodMs);
+    }
+
+    private static Result measure(String name, int mode, long durationMs, Case benchmark) {
+        // warm up so the JIT has compiled the case before it is measured
+        long deadline = System.nanoTime() + durationMs * 1000000L / 2;
+        while (System.nanoTime() < deadline) {
+            sink += benchmark.run(BATCH);
+        }
+        long operations = 0;
+        Allocations allocations = new Allocations(false);
+        long start = System.nanoTime();
+        deadline = start + durationMs * 1000000L;
+        long now;
+        do {
+            sink += benchmark.run(BATCH);
+            operations += BATCH;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocated = allocations.bytes();
+        return new Result(name, mode, operations * 1e9 / (now - start), perOp(allocated, operations));
+    }
+
+    /**
+     * Counts the bytes allocated since creation by the calling thread, or by every thread alive
+     * at the end; threads that ended in between are not counted.
+     */
+    private static final class Allocations {
+        private final boolean allThreads;
+        private final Map<Long, Long> start = new HashMap<>();
+
+        Allocations(boolean allThreads) {
+            this.allThreads = allThreads;
+            snapshot(start);
+        }
+
+        long bytes() {
+            Map<Long, Long> end = new HashMap<>();
+            snapshot(end);
+            long total = 0;
+            for (Map.Entry<Long, Long> entry : end.entrySet()) {
+                Long before = start.get(entry.getKey());
+                total += entry.getValue() - (before != null ? before : 0);
+            }
+            return total;
+        }
+
+        private void snapshot(Map<Long, Long> bytes) {
+            if (!COUNTS_ALLOCATIONS) {
+                return;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            long[] ids = allThreads ? threads.getAllThreadIds() : new long[]{Thread.currentThread().getId()};
+            long[] allocated = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                // -1 for threads that ended after the ids were taken
+                if (allocated[i] >= 0) {
+                    bytes.put(ids[i], allocated[i]);
+                }
+            }
+        }
+    }
+
+    private static double perOp(long bytes, long operations) {
+        return COUNTS_ALLOCATIONS ? (double) bytes / operations : Double.NaN;
+    }
+}
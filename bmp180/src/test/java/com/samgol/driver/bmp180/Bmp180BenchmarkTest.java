@@ -0,0 +1,20 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs {@link Bmp180Benchmark} from the unit test task, only when asked for with
+ * {@code -Pbenchmark} (or {@code -Pbenchmark=<ms>}), so the regular test run stays fast.
+ */
+public class Bmp180BenchmarkTest {
+    private static final String PROPERTY = "bmp180.benchmark";
+
+    @Test
+    public void benchmark() throws Exception {
+        String duration = System.getProperty(PROPERTY, "");
+        assumeTrue("benchmark not requested", !duration.isEmpty() && !duration.equals("false"));
+        Bmp180Benchmark.main(duration.equals("true") ? new String[0] : new String[]{duration});
+    }
+}
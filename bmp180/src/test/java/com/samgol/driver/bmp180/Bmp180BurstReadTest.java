@@ -0,0 +1,82 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class Bmp180BurstReadTest {
+    private Bmp180Simulator simulator;
+    private RecordingTransport transport;
+    private Bmp180 device;
+
+    @Before
+    public void setUp() {
+        simulator = new Bmp180Simulator();
+        transport = new RecordingTransport(simulator);
+        device = new Bmp180(transport);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    @Test
+    public void readsTheCalibrationInOneBurst() {
+        assertEquals(Arrays.asList("read 0xAA 22"), transport.take());
+
+        Bmp180Calibration expected = Bmp180Simulator.DATASHEET_CALIBRATION;
+        Bmp180Calibration calibration = device.getCalibration();
+        assertEquals(expected.AC1, calibration.AC1);
+        assertEquals(expected.AC2, calibration.AC2);
+        assertEquals(expected.AC3, calibration.AC3);
+        assertEquals(expected.AC4, calibration.AC4);
+        assertEquals(expected.AC5, calibration.AC5);
+        assertEquals(expected.AC6, calibration.AC6);
+        assertEquals(expected.B1, calibration.B1);
+        assertEquals(expected.B2, calibration.B2);
+        assertEquals(expected.MB, calibration.MB);
+        assertEquals(expected.MC, calibration.MC);
+        assertEquals(expected.MD, calibration.MD);
+    }
+
+    @Test
+    public void readsEachResultInOneBurst() throws IOException {
+        transport.take();
+        device.setMode(Bmp180.BMP180_HIGH_RES);
+        device.readSample();
+
+        assertEquals(Arrays.asList(
+                "write 0xF4 0x2E", "read 0xF6 2",
+                "write 0xF4 0xB4", "read 0xF6 3"), transport.take());
+    }
+
+    @Test
+    public void countsEveryTransaction() throws IOException {
+        long before = device.getTransactionCount();
+        assertEquals(1, before);
+        for (int i = 0; i < 5; i++) {
+            AwaitingCallback.convert(device);
+        }
+        assertEquals(before + 5 * 4, device.getTransactionCount());
+        assertEquals(simulator.getTransactionCount(), device.getTransactionCount());
+    }
+
+    @Test
+    public void decodesTheBurstsIntoTheSample() throws IOException {
+        simulator.setPressure(98765);
+        simulator.setTemperature(21.5);
+        for (int mode = Bmp180.BMP180_ULTRA_LOW_POWER; mode <= Bmp180.BMP180_ULTRA_HIGH_RES; mode++) {
+            device.setMode(mode);
+            Bmp180Sample sample = AwaitingCallback.convert(device);
+            assertEquals("mode " + mode, mode, sample.getMode());
+            assertEquals("mode " + mode, 98765, sample.getPressure(), 1);
+            assertEquals("mode " + mode, 21.5f, sample.getTemperature(), 0.05f);
+        }
+    }
+}
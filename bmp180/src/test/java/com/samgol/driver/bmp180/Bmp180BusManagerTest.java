@@ -0,0 +1,50 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the aggregate sample rate of simulated sensors run by a {@link Bmp180BusManager}: the
+ * conversion waits of the sensors on one bus overlap, so the rate grows with the number of
+ * sensors instead of staying at the rate of one.
+ */
+public class Bmp180BusManagerTest {
+    private static final long MEASURE_MS = 1000;
+    // the share of the ideal linear scaling that must be reached on a loaded build machine
+    private static final float EFFICIENCY = 0.6f;
+
+    @Test
+    public void throughputGrowsWithTheSensorsOnOneBus() throws Exception {
+        float one = measureRate(1, 1);
+        float two = measureRate(2, 1);
+        float four = measureRate(4, 1);
+        String rates = one + ", " + two + ", " + four + " samples/s";
+        assertTrue(rates, two >= 2 * one * EFFICIENCY);
+        assertTrue(rates, four >= 4 * one * EFFICIENCY);
+        assertTrue(rates, four > two);
+    }
+
+    @Test
+    public void throughputGrowsWithTheSensorsAcrossBuses() throws Exception {
+        float one = measureRate(1, 1);
+        float four = measureRate(4, 2);
+        assertTrue(one + ", " + four + " samples/s", four >= 4 * one * EFFICIENCY);
+    }
+
+    private static float measureRate(int devices, int buses) throws IOException, InterruptedException {
+        Bmp180BusManager manager = new Bmp180BusManager();
+        try {
+            for (int i = 0; i < devices; i++) {
+                manager.addDevice("sim" + i % buses, new Bmp180Simulator()).setMode(Bmp180.BMP180_ULTRA_LOW_POWER);
+            }
+            manager.start(10, null);
+            Thread.sleep(MEASURE_MS);
+            return manager.getThroughput();
+        } finally {
+            manager.close();
+        }
+    }
+}
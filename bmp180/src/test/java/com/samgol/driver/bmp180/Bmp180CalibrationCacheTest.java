@@ -0,0 +1,198 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which calibration reads the driver issues with a calibration cache: a spot-read when the
+ * cached copy matches the sensor, a full read when it does not or when the entry is damaged, and
+ * a repeated full read when the EEPROM reads back blank.
+ */
+public class Bmp180CalibrationCacheTest {
+    private static final String KEY = "I2C1";
+    private static final String FULL_READ = "read 0xAA 22";
+    private static final String SPOT_READ = "read 0xBC 4";
+    // differs from the datasheet example in MD, one of the spot-read words
+    private static final Bmp180Calibration OTHER = new Bmp180Calibration(408, -72, -14383, 32741,
+            32757, 23153, 6190, 4, -32768, -8711, 2869);
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("bmp180", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(directory.delete());
+    }
+
+    @Test
+    public void spotReadsACachedCalibration() throws IOException {
+        Bmp180CalibrationCache cache = new Bmp180CalibrationCache(directory);
+        assertEquals(Arrays.asList(FULL_READ), open(cache, new Bmp180Simulator()));
+        assertEeprom(Bmp180Simulator.DATASHEET_CALIBRATION, cache.get(KEY));
+
+        // a restarted driver finds the entry on disk
+        Bmp180CalibrationCache restarted = new Bmp180CalibrationCache(directory);
+        RecordingTransport transport = new RecordingTransport(new Bmp180Simulator());
+        Bmp180 device = new Bmp180(transport, null, restarted, KEY);
+        try {
+            assertEquals(Arrays.asList(SPOT_READ), transport.take());
+            assertEeprom(Bmp180Simulator.DATASHEET_CALIBRATION, device.getCalibration());
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    public void readsASwappedSensor() throws IOException {
+        Bmp180CalibrationCache cache = new Bmp180CalibrationCache(directory);
+        open(cache, new Bmp180Simulator());
+        assertEquals(Arrays.asList(SPOT_READ, FULL_READ), open(cache, new Bmp180Simulator(OTHER, 0)));
+        assertEeprom(OTHER, new Bmp180CalibrationCache(directory).get(KEY));
+    }
+
+    @Test
+    public void ignoresADamagedEntry() throws IOException {
+        open(new Bmp180CalibrationCache(directory), new Bmp180Simulator());
+        File entry = entry();
+        try (RandomAccessFile file = new RandomAccessFile(entry, "rw")) {
+            file.seek(3);
+            int value = file.read();
+            file.seek(3);
+            file.write(value ^ 0x10);
+        }
+        Bmp180CalibrationCache cache = new Bmp180CalibrationCache(directory);
+        assertNull(cache.get(KEY));
+        assertEquals(Arrays.asList(FULL_READ), open(cache, new Bmp180Simulator()));
+    }
+
+    @Test
+    public void ignoresTheEntryOfAnotherKey() throws IOException {
+        open(new Bmp180CalibrationCache(directory), new Bmp180Simulator());
+        // the checksum covers the key, an entry moved to another name does not pass
+        File entry = entry();
+        File foreign = new File(directory, entry.getName().replace(KEY, "I2C2"));
+        assertTrue(entry.renameTo(foreign));
+        Bmp180CalibrationCache cache = new Bmp180CalibrationCache(directory);
+        assertNull(cache.get("I2C2"));
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void retriesABlankEeprom() throws IOException {
+        for (int blank : new int[]{0x00, 0xFF}) {
+            Bmp180CalibrationCache cache = new Bmp180CalibrationCache(directory);
+            cache.remove(KEY);
+            // the first full read comes back blank, as from a sensor that is still powering up
+            assertEquals(Arrays.asList(FULL_READ, FULL_READ),
+                    open(cache, new BlankEeprom(new Bmp180Simulator(), blank, 1)));
+            assertEeprom(Bmp180Simulator.DATASHEET_CALIBRATION, cache.get(KEY));
+        }
+    }
+
+    @Test
+    public void cachesNothingFromAnEepromThatStaysBlank() throws IOException {
+        Bmp180CalibrationCache cache = new Bmp180CalibrationCache(directory);
+        RecordingTransport transport = new RecordingTransport(
+                new BlankEeprom(new Bmp180Simulator(), 0xFF, Integer.MAX_VALUE));
+        Bmp180 device = new Bmp180(transport, null, cache, KEY);
+        try {
+            assertEquals(Arrays.asList(FULL_READ, FULL_READ, FULL_READ), transport.take());
+            assertNull(device.getCalibration());
+            assertNull(cache.get(KEY));
+        } finally {
+            device.close();
+        }
+    }
+
+    // creates a driver on the sensor and returns the transactions it issued
+    private static List<String> open(Bmp180CalibrationCache cache, Bmp180Transport sensor)
+            throws IOException {
+        RecordingTransport transport = new RecordingTransport(sensor);
+        Bmp180 device = new Bmp180(transport, null, cache, KEY);
+        try {
+            assertNotNull(device.getCalibration());
+            return transport.take();
+        } finally {
+            device.close();
+        }
+    }
+
+    private File entry() {
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static void assertEeprom(Bmp180Calibration expected, Bmp180Calibration actual) {
+        assertNotNull(actual);
+        byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+        actual.toEeprom(eeprom, 0);
+        assertEeprom(expected, eeprom);
+    }
+
+    private static void assertEeprom(Bmp180Calibration expected, byte[] actual) {
+        byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+        expected.toEeprom(eeprom, 0);
+        assertArrayEquals(eeprom, actual);
+    }
+
+    /**
+     * Serves the first full calibration reads with every byte set to {@code value}.
+     */
+    private static final class BlankEeprom implements Bmp180Transport {
+        private final Bmp180Transport delegate;
+        private final int value;
+        private int blankReads;
+
+        BlankEeprom(Bmp180Transport delegate, int value, int blankReads) {
+            this.delegate = delegate;
+            this.value = value;
+            this.blankReads = blankReads;
+        }
+
+        @Override
+        public void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+            delegate.readRegBuffer(register, buffer, length);
+            if (register == 0xAA && length == Bmp180Calibration.LENGTH && blankReads > 0) {
+                blankReads--;
+                Arrays.fill(buffer, 0, length, (byte) value);
+            }
+        }
+
+        @Override
+        public void writeRegByte(int register, byte value) throws IOException {
+            delegate.writeRegByte(register, value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
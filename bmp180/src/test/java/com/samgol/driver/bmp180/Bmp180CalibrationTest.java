@@ -0,0 +1,71 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Bmp180CalibrationTest {
+    private static final Bmp180Calibration DATASHEET = Bmp180Simulator.DATASHEET_CALIBRATION;
+
+    @Test
+    public void reproducesTheDatasheetExample() {
+        int b5 = DATASHEET.computeB5(27898);
+        assertEquals(2400, b5);
+        assertEquals(150, Bmp180Calibration.computeTemperature(b5));
+        assertEquals(69964, DATASHEET.computePressure(b5, 23843, Bmp180.BMP180_ULTRA_LOW_POWER));
+    }
+
+    @Test
+    public void matchesThePerSampleDatasheetMath() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            int mode = random.nextInt(4);
+            // raw readings from about -70 to 100 C and 250 to 1200 hPa
+            int UT = 22000 + random.nextInt(18000);
+            int UP = (8000 + random.nextInt(40000)) << mode;
+            int b5 = DATASHEET.computeB5(UT);
+            assertEquals(DatasheetReference.temperature(DATASHEET, UT),
+                    Bmp180Calibration.computeTemperature(b5));
+            assertEquals("UT " + UT + " UP " + UP + " mode " + mode,
+                    DatasheetReference.pressure(DATASHEET, UT, UP, mode),
+                    DATASHEET.computePressure(b5, UP, mode));
+        }
+    }
+
+    @Test
+    public void splitTermsComposeToThePressure() {
+        int b5 = DATASHEET.computeB5(27898);
+        for (int mode = 0; mode < 4; mode++) {
+            int UP = 23843 << mode;
+            assertEquals(DATASHEET.computePressure(b5, UP, mode), DATASHEET.compensatePressure(
+                    DATASHEET.computeB3(b5, mode), DATASHEET.computeB4(b5), UP, mode));
+        }
+    }
+
+    @Test
+    public void roundTripsTheEeprom() {
+        byte[] eeprom = new byte[Bmp180Calibration.LENGTH + 2];
+        DATASHEET.toEeprom(eeprom, 2);
+        byte[] again = new byte[eeprom.length];
+        Bmp180Calibration.fromEeprom(eeprom, 2).toEeprom(again, 2);
+        assertArrayEquals(eeprom, again);
+        assertTrue(Bmp180Calibration.isValid(eeprom, 2));
+    }
+
+    @Test
+    public void rejectsBlankEeprom() {
+        byte[] eeprom = new byte[Bmp180Calibration.LENGTH];
+        DATASHEET.toEeprom(eeprom, 0);
+        eeprom[6] = (byte) 0xFF;
+        eeprom[7] = (byte) 0xFF;
+        assertFalse(Bmp180Calibration.isValid(eeprom, 0));
+        eeprom[6] = 0;
+        eeprom[7] = 0;
+        assertFalse(Bmp180Calibration.isValid(eeprom, 0));
+    }
+}
@@ -0,0 +1,129 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that batch compensation, on the calling thread and split across a pool, gives bit for
+ * bit the results of compensating every sample on its own.
+ */
+public class Bmp180CompensatorTest {
+    private static final Bmp180Calibration DATASHEET = Bmp180Simulator.DATASHEET_CALIBRATION;
+    private static final float SEA_LEVEL = 101325;
+    // enough samples for the pool to split them into several tasks
+    private static final int SAMPLES = 100000;
+    private static final int OFFSET = 7;
+
+    @Test
+    public void matchesPerSampleCompensationInEveryMode() {
+        for (int mode = Bmp180.BMP180_ULTRA_LOW_POWER; mode <= Bmp180.BMP180_ULTRA_HIGH_RES; mode++) {
+            Batch batch = new Batch(mode, 1);
+            Bmp180Compensator.compensate(DATASHEET, mode, batch.rawTemperature, batch.rawPressure,
+                    OFFSET, SAMPLES, batch.pressure, batch.temperature, batch.altitude, SEA_LEVEL);
+            batch.assertPerSample();
+        }
+    }
+
+    @Test
+    public void poolMatchesPerSampleCompensationInEveryMode() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int mode = Bmp180.BMP180_ULTRA_LOW_POWER; mode <= Bmp180.BMP180_ULTRA_HIGH_RES; mode++) {
+                Batch batch = new Batch(mode, 2);
+                Bmp180Compensator.compensate(pool, DATASHEET, mode, batch.rawTemperature,
+                        batch.rawPressure, OFFSET, SAMPLES, batch.pressure, batch.temperature,
+                        batch.altitude, SEA_LEVEL);
+                batch.assertPerSample();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void computesThePressureWithoutTheOptionalOutputs() {
+        int mode = Bmp180.BMP180_STANDARD;
+        Batch batch = new Batch(mode, 3);
+        int[] pressure = new int[batch.pressure.length];
+        Bmp180Compensator.compensate(DATASHEET, mode, batch.rawTemperature, batch.rawPressure,
+                OFFSET, SAMPLES, pressure, null, null, SEA_LEVEL);
+        Bmp180Compensator.compensate(DATASHEET, mode, batch.rawTemperature, batch.rawPressure,
+                OFFSET, SAMPLES, batch.pressure, batch.temperature, batch.altitude, SEA_LEVEL);
+        assertArrayEquals(batch.pressure, pressure);
+    }
+
+    @Test
+    public void rejectsRangesOutsideTheArrays() {
+        int[] raw = new int[10];
+        int[] pressure = new int[10];
+        float[] altitude = new float[5];
+        try {
+            Bmp180Compensator.compensate(DATASHEET, 0, raw, raw, 5, 6, pressure, null, null, SEA_LEVEL);
+            fail("past the end");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            Bmp180Compensator.compensate(DATASHEET, 0, raw, raw, 0, 10, pressure, null, altitude,
+                    SEA_LEVEL);
+            fail("output too short");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            Bmp180Compensator.compensate(DATASHEET, 0, raw, raw, -1, 1, pressure, null, null, SEA_LEVEL);
+            fail("negative offset");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    /**
+     * Random raw readings, the raw temperature held for runs of up to 20 samples as continuous
+     * sampling records it, surrounded by samples outside the range that must stay untouched.
+     */
+    private static final class Batch {
+        final int mode;
+        final int[] rawTemperature = new int[OFFSET + SAMPLES + 3];
+        final int[] rawPressure = new int[rawTemperature.length];
+        final int[] pressure = new int[rawTemperature.length];
+        final float[] temperature = new float[rawTemperature.length];
+        final float[] altitude = new float[rawTemperature.length];
+
+        Batch(int mode, long seed) {
+            this.mode = mode;
+            Random random = new Random(seed);
+            int UT = 0;
+            for (int i = 0; i < rawTemperature.length; i++) {
+                if (i == 0 || random.nextInt(20) == 0) {
+                    // raw readings from about -70 to 100 C and 250 to 1200 hPa
+                    UT = 22000 + random.nextInt(18000);
+                }
+                rawTemperature[i] = UT;
+                rawPressure[i] = (8000 + random.nextInt(40000)) << mode;
+            }
+        }
+
+        void assertPerSample() {
+            for (int i = 0; i < rawTemperature.length; i++) {
+                if (i < OFFSET || i >= OFFSET + SAMPLES) {
+                    assertEquals(0, pressure[i]);
+                    assertEquals(0, Float.floatToIntBits(temperature[i]));
+                    assertEquals(0, Float.floatToIntBits(altitude[i]));
+                    continue;
+                }
+                int B5 = DATASHEET.computeB5(rawTemperature[i]);
+                int p = DATASHEET.computePressure(B5, rawPressure[i], mode);
+                String sample = "sample " + i + " mode " + mode;
+                assertEquals(sample, p, pressure[i]);
+                assertEquals(sample, Float.floatToIntBits(Bmp180Calibration.computeTemperature(B5) / 10.0F),
+                        Float.floatToIntBits(temperature[i]));
+                assertEquals(sample, Float.floatToIntBits(Altitude.fromPressure(p, SEA_LEVEL)),
+                        Float.floatToIntBits(altitude[i]));
+            }
+        }
+    }
+}
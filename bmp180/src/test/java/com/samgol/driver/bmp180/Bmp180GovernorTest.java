@@ -0,0 +1,83 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the governor samples carrying the datasheet noise of their mode: noise alone must not
+ * change the mode, a pressure trend above the threshold must raise it. Against the simulator the
+ * mode is capped by the rate the device actually samples at.
+ */
+public class Bmp180GovernorTest {
+    // typical RMS pressure noise per mode in Pa, from the datasheet
+    private static final float[] RMS_NOISE_PA = {6, 5, 4, 3};
+    private static final long PERIOD_NS = 10000000L;
+
+    @Test
+    public void noiseAloneKeepsTheLowestMode() {
+        Bmp180Governor governor = new Bmp180Governor(50, 1000, 20);
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            int mode = governor.selectMode(0);
+            governor.onSample(101325 + (float) (RMS_NOISE_PA[mode] * random.nextGaussian()),
+                    i * PERIOD_NS, mode);
+        }
+        assertEquals(10000, governor.getConversionCount(Bmp180.BMP180_ULTRA_LOW_POWER));
+        assertEquals(1, governor.getNoiseRatio(), 0.5);
+    }
+
+    @Test
+    public void aSteadyTrendRaisesTheModeWithoutOscillating() {
+        Bmp180Governor governor = new Bmp180Governor(50, 1000, 20);
+        Random random = new Random(1);
+        int changes = 0;
+        int last = governor.getCurrentMode();
+        for (int i = 0; i < 2000; i++) {
+            int mode = governor.selectMode(0);
+            if (mode != last) {
+                changes++;
+                last = mode;
+            }
+            // 60 Pa/s, about 5 m/s of descent: between two and four times the threshold
+            float pressure = 101325 + 60f * i * PERIOD_NS / 1e9f;
+            governor.onSample(pressure + (float) (RMS_NOISE_PA[mode] * random.nextGaussian()),
+                    i * PERIOD_NS, mode);
+        }
+        assertEquals(Bmp180.BMP180_HIGH_RES, governor.getCurrentMode());
+        assertTrue("mode changed " + changes + " times", changes <= 2);
+    }
+
+    @Test
+    public void capsTheModeByTheContinuousRate() throws Exception {
+        // 20 Hz leaves time for every mode, 100 Hz only for ultra low power
+        Bmp180Governor governor = new Bmp180Governor(20, 10000, 20);
+        assertEquals(Bmp180.BMP180_ULTRA_HIGH_RES, governor.getMaxMode());
+        Bmp180 device = new Bmp180(new Bmp180Simulator());
+        try {
+            device.setGovernor(governor);
+            device.startContinuous(1, 100f, null);
+            Thread.sleep(200);
+            assertEquals(Bmp180.BMP180_ULTRA_LOW_POWER, governor.getMaxMode());
+            device.stopContinuous();
+            // the first read may share the conversion in flight, the second starts its own
+            AwaitingCallback.convert(device);
+            AwaitingCallback.convert(device);
+            assertEquals(Bmp180.BMP180_ULTRA_HIGH_RES, governor.getMaxMode());
+
+            Bmp180Metrics.Snapshot snapshot = device.getMetrics().snapshot();
+            long total = 0;
+            for (int mode = Bmp180.BMP180_ULTRA_LOW_POWER; mode <= Bmp180.BMP180_ULTRA_HIGH_RES; mode++) {
+                long count = snapshot.get("pressure.conversions.mode" + mode).longValue();
+                assertEquals(governor.getConversionCount(mode), count);
+                total += count;
+            }
+            assertTrue(total > 10);
+        } finally {
+            device.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the demand, overflow and termination rules of the publisher by feeding the device
+ * samples directly, delivering on the calling thread, and the isolation of subscribers against
+ * the simulator in continuous mode.
+ */
+public class Bmp180PublisherTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Bmp180Simulator simulator;
+    private Bmp180 device;
+
+    @Before
+    public void setUp() {
+        simulator = new Bmp180Simulator();
+        device = new Bmp180(simulator);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    @Test
+    public void deliversNoMoreThanRequested() {
+        Bmp180Publisher publisher = new Bmp180Publisher(device, DIRECT);
+        Recorder subscriber = new Recorder(3);
+        publisher.subscribe(subscriber, Bmp180Publisher.OverflowPolicy.DROP, 16);
+        publish(0, 10);
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.received);
+        subscriber.subscription.request(2);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.received);
+        publisher.close();
+    }
+
+    @Test
+    public void dropKeepsTheOldestSamples() {
+        Bmp180Publisher publisher = new Bmp180Publisher(device, DIRECT);
+        Recorder subscriber = new Recorder(0);
+        publisher.subscribe(subscriber, Bmp180Publisher.OverflowPolicy.DROP, 4);
+        publish(0, 10);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList(0, 1, 2, 3), subscriber.received);
+        assertEquals(6, subscriber.subscription.getDropped());
+        publisher.close();
+    }
+
+    @Test
+    public void latestKeepsTheNewestSamples() {
+        Bmp180Publisher publisher = new Bmp180Publisher(device, DIRECT);
+        Recorder subscriber = new Recorder(0);
+        publisher.subscribe(subscriber, Bmp180Publisher.OverflowPolicy.LATEST, 4);
+        publish(0, 10);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList(6, 7, 8, 9), subscriber.received);
+        assertEquals(6, subscriber.subscription.getDropped());
+        publisher.close();
+    }
+
+    @Test
+    public void bufferFailsTheSubscriberOnOverflow() {
+        Bmp180Publisher publisher = new Bmp180Publisher(device, DIRECT);
+        Recorder subscriber = new Recorder(0);
+        publisher.subscribe(subscriber, Bmp180Publisher.OverflowPolicy.BUFFER, 4);
+        publish(0, 5);
+        assertTrue(subscriber.error instanceof Bmp180Exception);
+        assertTrue(subscriber.received.isEmpty());
+        assertEquals(0, publisher.getSubscriberCount());
+        publisher.close();
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void cancelStopsDelivery() {
+        Bmp180Publisher publisher = new Bmp180Publisher(device, DIRECT);
+        Recorder subscriber = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Bmp180Publisher.OverflowPolicy.DROP, 16);
+        publish(0, 3);
+        subscriber.subscription.cancel();
+        assertEquals(0, publisher.getSubscriberCount());
+        publish(3, 3);
+        publisher.close();
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.received);
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void closeCompletesOnceTheQueueIsDrained() {
+        Bmp180Publisher publisher = new Bmp180Publisher(device, DIRECT);
+        Recorder subscriber = new Recorder(0);
+        publisher.subscribe(subscriber, Bmp180Publisher.OverflowPolicy.DROP, 16);
+        publish(0, 2);
+        publisher.close();
+        publish(2, 2);
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(1);
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList(0, 1), subscriber.received);
+        assertTrue(subscriber.completed);
+
+        // subscribing to a closed publisher completes right away
+        Recorder late = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(late);
+        assertTrue(late.subscription != null && late.completed);
+        assertTrue(late.received.isEmpty());
+    }
+
+    @Test
+    public void aSlowSubscriberDelaysNeitherTheOthersNorTheSampler() throws Exception {
+        final AtomicInteger fast = new AtomicInteger();
+        Bmp180Publisher publisher = new Bmp180Publisher(device);
+        Recorder slow = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(Bmp180Sample sample) {
+                super.onNext(sample);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        publisher.subscribe(slow, Bmp180Publisher.OverflowPolicy.DROP, 4);
+        publisher.subscribe(new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(Bmp180Sample sample) {
+                fast.incrementAndGet();
+            }
+        }, Bmp180Publisher.OverflowPolicy.DROP, 64);
+
+        device.setMode(Bmp180.BMP180_ULTRA_LOW_POWER);
+        device.startContinuous(10, null);
+        Thread.sleep(1000);
+        device.stopContinuous();
+        Thread.sleep(100);
+        publisher.close();
+
+        long samples = device.getMetrics().snapshot().get("samples.count").longValue();
+        // the documented 181 samples/s in ultra low power, with the margin of the throughput test
+        assertTrue(samples + " samples/s", samples >= 181 * 0.75f);
+        assertEquals(samples, fast.get(), 1);
+        synchronized (slow) {
+            assertTrue(slow.received.size() <= 6);
+        }
+        assertTrue(slow.subscription.getDropped() > samples / 2);
+    }
+
+    private void publish(int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            device.onSample(new Bmp180Sample(i, 20, 0, i, 0, 0, Bmp180.BMP180_ULTRA_LOW_POWER));
+        }
+    }
+
+    /**
+     * Records the pressures it receives, requesting {@code initial} samples on subscription.
+     */
+    private static class Recorder implements Bmp180Publisher.Subscriber {
+        private final long initial;
+        final List<Integer> received = new ArrayList<>();
+        volatile Bmp180Publisher.Subscription subscription;
+        volatile Throwable error;
+        volatile boolean completed;
+
+        Recorder(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Bmp180Publisher.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial > 0) {
+                subscription.request(initial);
+            }
+        }
+
+        @Override
+        public void onNext(Bmp180Sample sample) {
+            synchronized (this) {
+                received.add(sample.getPressure());
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes logs, damages them the way a crash would, and opens them again with both the reader and
+ * the recorder. A recorder that is not closed stands for a crashed process: its mapping is
+ * already in the file, but the header count was last committed every 64 records.
+ */
+public class Bmp180RecorderTest {
+    private static final Bmp180Calibration CALIBRATION = Bmp180Simulator.DATASHEET_CALIBRATION;
+
+    private File path;
+
+    @Before
+    public void setUp() throws IOException {
+        path = File.createTempFile("bmp180", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(path.delete());
+    }
+
+    @Test
+    public void resumesAfterTheLastRecordOfACrashedRecorder() throws IOException {
+        Bmp180Recorder crashed = record(new Bmp180Recorder(path, 1000, CALIBRATION), 0, 100);
+        try {
+            assertRecords(1, 100, 0);
+            try (Bmp180Recorder recorder = new Bmp180Recorder(path, 1000, CALIBRATION)) {
+                assertEquals(100, recorder.getRecordCount());
+                record(recorder, 100, 50);
+            }
+            assertRecords(1, 150, 0);
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    public void fallsBackToTheOtherCountSlot() throws IOException {
+        record(new Bmp180Recorder(path, 1000, CALIBRATION), 0, 200).close();
+        // tear the count of the slot holding the higher one, leaving its checksum stale
+        int newest = newestSlot();
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.seek(newest);
+            file.writeLong(Long.reverseBytes(5000));
+        }
+        assertRecords(1, 200, 0);
+        try (Bmp180Recorder recorder = new Bmp180Recorder(path, 1000, CALIBRATION)) {
+            assertEquals(200, recorder.getRecordCount());
+        }
+    }
+
+    @Test
+    public void skipsATornRecord() throws IOException {
+        record(new Bmp180Recorder(path, 1000, CALIBRATION), 0, 70).close();
+        // the sequence number is written last, a record torn in the middle still has none
+        tear(30);
+        try (Bmp180LogReader reader = new Bmp180LogReader(path)) {
+            assertEquals(70, reader.getRecordCount());
+            int read = 0;
+            while (reader.next()) {
+                assertTrue(reader.getSequence() != 30);
+                assertRecord(reader, reader.getSequence());
+                read++;
+            }
+            assertEquals(69, read);
+            assertEquals(1, reader.getSkipped());
+        }
+    }
+
+    @Test
+    public void overwritesATornLastRecord() throws IOException {
+        Bmp180Recorder crashed = record(new Bmp180Recorder(path, 1000, CALIBRATION), 0, 65);
+        try {
+            tear(65);
+            assertRecords(1, 64, 0);
+            try (Bmp180Recorder recorder = new Bmp180Recorder(path, 1000, CALIBRATION)) {
+                assertEquals(64, recorder.getRecordCount());
+                record(recorder, 64, 10);
+            }
+            assertRecords(1, 74, 0);
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    public void wrapsAroundKeepingTheNewestRecords() throws IOException {
+        record(new Bmp180Recorder(path, 16, CALIBRATION), 0, 50).close();
+        assertRecords(35, 50, 0);
+        try (Bmp180Recorder recorder = new Bmp180Recorder(path, 16, CALIBRATION)) {
+            assertEquals(50, recorder.getRecordCount());
+            record(recorder, 50, 5);
+        }
+        assertRecords(40, 55, 0);
+    }
+
+    @Test
+    public void overwritesALogOfAnotherCapacity() throws IOException {
+        record(new Bmp180Recorder(path, 100, CALIBRATION), 0, 50).close();
+        try (Bmp180Recorder recorder = new Bmp180Recorder(path, 200, CALIBRATION)) {
+            assertEquals(0, recorder.getRecordCount());
+        }
+        assertRecords(1, 0, 0);
+    }
+
+    @Test
+    public void overwritesALogOfAnotherSensor() throws IOException {
+        record(new Bmp180Recorder(path, 100, CALIBRATION), 0, 50).close();
+        Bmp180Calibration other = new Bmp180Calibration(409, -72, -14383, 32741, 32757, 23153,
+                6190, 4, -32768, -8711, 2868);
+        try (Bmp180Recorder recorder = record(new Bmp180Recorder(path, 100, other), 0, 5)) {
+            assertEquals(5, recorder.getRecordCount());
+        }
+        assertRecords(1, 5, 0);
+        try (Bmp180LogReader reader = new Bmp180LogReader(path)) {
+            assertEquals(409, reader.getCalibration().AC1);
+        }
+    }
+
+    private static Bmp180Recorder record(Bmp180Recorder recorder, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            recorder.onSample(sample(i + 1));
+        }
+        return recorder;
+    }
+
+    private static Bmp180Sample sample(long sequence) {
+        int i = (int) sequence;
+        return new Bmp180Sample(100000 + i, 20 + i / 100f, i / 10f, i * 10000000L,
+                27898 + i, 23843 + i, i % 4);
+    }
+
+    private void assertRecords(long first, long last, long skipped) throws IOException {
+        try (Bmp180LogReader reader = new Bmp180LogReader(path)) {
+            for (long sequence = first; sequence <= last; sequence++) {
+                assertTrue("record " + sequence, reader.next());
+                assertEquals(sequence, reader.getSequence());
+                assertRecord(reader, sequence);
+            }
+            assertFalse(reader.next());
+            assertEquals(skipped, reader.getSkipped());
+        }
+    }
+
+    private static void assertRecord(Bmp180LogReader reader, long sequence) {
+        Bmp180Sample expected = sample(sequence);
+        Bmp180Sample actual = reader.getSample();
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getRawTemperature(), actual.getRawTemperature());
+        assertEquals(expected.getRawPressure(), actual.getRawPressure());
+        assertEquals(expected.getMode(), actual.getMode());
+        assertEquals(expected.getPressure(), actual.getPressure());
+        assertEquals(expected.getTemperature(), actual.getTemperature(), 0);
+        assertEquals(expected.getAltitude(), actual.getAltitude(), 0);
+    }
+
+    // clears the sequence number of a record, little endian like the rest of the file
+    private void tear(long sequence) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            int capacity = Integer.reverseBytes(readInt(file, Bmp180Recorder.CAPACITY_OFFSET));
+            file.seek(Bmp180Recorder.HEADER_SIZE
+                    + ((sequence - 1) % capacity) * Bmp180Recorder.RECORD_SIZE
+                    + Bmp180Recorder.SEQUENCE);
+            file.writeLong(0);
+        }
+    }
+
+    private int newestSlot() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            int newest = Bmp180Recorder.SLOT_OFFSETS[0];
+            long highest = -1;
+            for (int offset : Bmp180Recorder.SLOT_OFFSETS) {
+                file.seek(offset);
+                long count = Long.reverseBytes(file.readLong());
+                if (count > highest) {
+                    highest = count;
+                    newest = offset;
+                }
+            }
+            return newest;
+        }
+    }
+
+    private static int readInt(RandomAccessFile file, long offset) throws IOException {
+        file.seek(offset);
+        return file.readInt();
+    }
+}
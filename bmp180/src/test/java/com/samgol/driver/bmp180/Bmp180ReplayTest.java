@@ -0,0 +1,125 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records samples from the simulator and replays them: with the configuration they were recorded
+ * with the replay must reproduce them bit for bit, whatever governor the replaying device has.
+ */
+public class Bmp180ReplayTest {
+    private static final int SAMPLES = 40;
+
+    private File path;
+
+    @Before
+    public void setUp() throws IOException {
+        path = File.createTempFile("bmp180", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(path.delete());
+    }
+
+    @Test
+    public void reproducesEveryModeThroughAFilter() throws IOException {
+        Bmp180Simulator simulator = new Bmp180Simulator();
+        simulator.setNoise(10, 0.1);
+        Bmp180 device = new Bmp180(simulator);
+        List<Bmp180Sample> recorded = new ArrayList<>();
+        try (Bmp180Recorder recorder = new Bmp180Recorder(path, 100, device.getCalibration())) {
+            device.setPressureFilter(Bmp180Filter.median(5));
+            device.addSampleListener(recorder);
+            for (int i = 0; i < SAMPLES; i++) {
+                device.setMode(i % 4);
+                recorded.add(AwaitingCallback.convert(device));
+            }
+        } finally {
+            device.close();
+        }
+
+        assertSamples(recorded, replay(Bmp180Filter.median(5), null));
+        // the governor picks modes of its own, the replay must keep the recorded ones
+        assertSamples(recorded, replay(Bmp180Filter.median(5), new Bmp180Governor(1, 10000, 0.01f)));
+    }
+
+    @Test
+    public void reproducesTheModesAGovernorPicked() throws IOException {
+        Bmp180Simulator simulator = new Bmp180Simulator();
+        Bmp180 device = new Bmp180(simulator);
+        List<Bmp180Sample> recorded = new ArrayList<>();
+        Set<Integer> modes = new HashSet<>();
+        try (Bmp180Recorder recorder = new Bmp180Recorder(path, 100, device.getCalibration())) {
+            device.setGovernor(new Bmp180Governor(10, 10000, 1));
+            device.addSampleListener(recorder);
+            for (int i = 0; i < SAMPLES; i++) {
+                simulator.setPressure(101325 - 50 * i);
+                Bmp180Sample sample = AwaitingCallback.convert(device);
+                recorded.add(sample);
+                modes.add(sample.getMode());
+            }
+        } finally {
+            device.close();
+        }
+        assertTrue("modes " + modes, modes.size() > 1);
+
+        assertSamples(recorded, replay(null, null));
+        assertSamples(recorded, replay(null, new Bmp180Governor(10, 10000, 1)));
+        assertSamples(recorded, replay(null, new Bmp180Governor(100, 10000, 1000)));
+    }
+
+    private List<Bmp180Sample> replay(Bmp180Filter filter, Bmp180Governor governor)
+            throws IOException {
+        final List<Bmp180Sample> replayed = new ArrayList<>();
+        Bmp180Replay replay = new Bmp180Replay(path);
+        Bmp180 device = new Bmp180(replay);
+        try {
+            device.setPressureFilter(filter);
+            device.setGovernor(governor);
+            replay.run(device, new Bmp180.Callback() {
+                @Override
+                public void onSample(Bmp180Sample sample) {
+                    replayed.add(sample);
+                }
+
+                @Override
+                public void onError(IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        } finally {
+            device.close();
+        }
+        return replayed;
+    }
+
+    private static void assertSamples(List<Bmp180Sample> expected, List<Bmp180Sample> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Bmp180Sample e = expected.get(i);
+            Bmp180Sample a = actual.get(i);
+            String at = "sample " + i;
+            assertEquals(at, e.getTimestamp(), a.getTimestamp());
+            assertEquals(at, e.getMode(), a.getMode());
+            assertEquals(at, e.getRawTemperature(), a.getRawTemperature());
+            assertEquals(at, e.getRawPressure(), a.getRawPressure());
+            assertEquals(at, e.getPressure(), a.getPressure());
+            assertEquals(at, Float.floatToIntBits(e.getTemperature()),
+                    Float.floatToIntBits(a.getTemperature()));
+            assertEquals(at, Float.floatToIntBits(e.getAltitude()),
+                    Float.floatToIntBits(a.getAltitude()));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks which samples the detector reports: changes beyond the hysteresis of any quantity it
+ * watches, and a stable value once per heartbeat.
+ */
+public class ChangeDetectorTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void reportsChangesBeyondTheHysteresis() {
+        ChangeDetector detector = new ChangeDetector(5, 0.5f, ChangeDetector.IGNORE, 0);
+        assertTrue(detector.accept(sample(100000, 20, 0)));
+        assertFalse(detector.accept(sample(100005, 20.5f, 10)));
+        assertTrue(detector.accept(sample(100006, 20, 0)));
+        assertTrue(detector.accept(sample(100006, 20.6f, 0)));
+        assertEquals(1, detector.getSuppressed());
+    }
+
+    @Test
+    public void measuresTheChangeFromTheLastReport() {
+        ChangeDetector detector = new ChangeDetector(5, ChangeDetector.IGNORE,
+                ChangeDetector.IGNORE, 0);
+        int reported = 0;
+        // a slow drift of 1 Pa per sample is reported every 6 samples, not never
+        for (int i = 0; i <= 60; i++) {
+            if (detector.accept(sample(100000 + i, 20, 0, i * 10 * MS))) {
+                assertEquals(0, i % 6);
+                reported++;
+            }
+        }
+        assertEquals(11, reported);
+        assertEquals(50, detector.getSuppressed());
+    }
+
+    @Test
+    public void reportsAStableValueOncePerHeartbeat() {
+        ChangeDetector detector = new ChangeDetector(5, 0.5f, 1, 100);
+        assertEquals(100, detector.getHeartbeatMs());
+        int reported = 0;
+        for (int i = 0; i < 100; i++) {
+            if (detector.accept(sample(100000, 20, 0, i * 10 * MS))) {
+                assertEquals(0, i % 10);
+                reported++;
+            }
+        }
+        assertEquals(10, reported);
+
+        ChangeDetector silent = new ChangeDetector(5, 0.5f, 1, 0);
+        assertTrue(silent.accept(sample(100000, 20, 0, 0)));
+        assertFalse(silent.accept(sample(100000, 20, 0, 3600000 * MS)));
+    }
+
+    @Test
+    public void reportsAgainAfterReset() {
+        ChangeDetector detector = new ChangeDetector(5, 0.5f, 1, 0);
+        assertTrue(detector.accept(sample(100000, 20, 0)));
+        assertFalse(detector.accept(sample(100000, 20, 0)));
+        detector.reset();
+        assertTrue(detector.accept(sample(100000, 20, 0)));
+    }
+
+    @Test
+    public void rejectsNegativeAndNaNArguments() {
+        float[][] hystereses = {{-1, 0, 0}, {0, -1, 0}, {0, 0, -1}, {Float.NaN, 0, 0}};
+        for (float[] h : hystereses) {
+            try {
+                new ChangeDetector(h[0], h[1], h[2], 0);
+                fail("accepted " + h[0] + ", " + h[1] + ", " + h[2]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            ChangeDetector.checkArguments(0, 0, 0, -1);
+            fail("accepted a negative heartbeat");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void wakesTheConsumerOnlyOnChangesAndHeartbeats() throws Exception {
+        Bmp180Simulator simulator = new Bmp180Simulator();
+        simulator.setNoise(0, 0);
+        Bmp180 device = new Bmp180(simulator);
+        final List<Bmp180Sample> reported = new ArrayList<>();
+        final List<IOException> errors = new ArrayList<>();
+        ChangeDetector detector = new ChangeDetector(50, ChangeDetector.IGNORE,
+                ChangeDetector.IGNORE, 200);
+        try {
+            device.addSampleListener(detector.wrap(new Bmp180.Callback() {
+                @Override
+                public void onSample(Bmp180Sample sample) {
+                    synchronized (reported) {
+                        reported.add(sample);
+                    }
+                }
+
+                @Override
+                public void onError(IOException e) {
+                    synchronized (reported) {
+                        errors.add(e);
+                    }
+                }
+            }));
+            device.startContinuous(10, 50f, null);
+            Thread.sleep(500);
+            simulator.setPressure(100000);
+            Thread.sleep(100);
+            device.stopContinuous();
+            Thread.sleep(50);
+        } finally {
+            device.close();
+        }
+
+        synchronized (reported) {
+            // the first sample, two or three heartbeats and the step, out of about 30 samples
+            assertTrue(reported.size() + " reports", reported.size() >= 3 && reported.size() <= 6);
+            assertEquals(100000, reported.get(reported.size() - 1).getPressure(), 50);
+            assertTrue(errors.isEmpty());
+        }
+        assertTrue(detector.getSuppressed() > 20);
+    }
+
+    private static Bmp180Sample sample(int pressure, float temperature, float altitude) {
+        return sample(pressure, temperature, altitude, 0);
+    }
+
+    private static Bmp180Sample sample(int pressure, float temperature, float altitude,
+                                       long timestamp) {
+        return new Bmp180Sample(pressure, temperature, altitude, timestamp, 0, 0,
+                Bmp180.BMP180_ULTRA_LOW_POWER);
+    }
+}
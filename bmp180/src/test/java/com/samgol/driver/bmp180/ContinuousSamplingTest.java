@@ -0,0 +1,301 @@
+package com.samgol.driver.bmp180;
+
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Measures continuous sampling against the simulator, which honors the datasheet conversion
+ * times, and compares it with the throughput documented on
+ * {@link Bmp180#startContinuous(int, Bmp180.Callback)}. At a fixed rate the samples have to stay on
+ * the grid of {@link Bmp180#startContinuous(int, float, Bmp180.Callback)}.
+ */
+public class ContinuousSamplingTest {
+    // documented samples per second with a temperature interval of 10, per mode
+    private static final float[] TARGET_HZ = {181, 117, 69, 37};
+    // scheduling on a loaded build machine costs some of it
+    private static final float TOLERANCE = 0.75f;
+    private static final long MEASURE_MS = 1000;
+
+    private Bmp180Simulator simulator;
+    private RecordingTransport transport;
+    private Bmp180 device;
+
+    @Before
+    public void setUp() {
+        simulator = new Bmp180Simulator();
+        transport = new RecordingTransport(simulator);
+        device = new Bmp180(transport);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    @Test
+    public void meetsTheDocumentedThroughputInEveryMode() throws Exception {
+        for (int mode = Bmp180.BMP180_ULTRA_LOW_POWER; mode <= Bmp180.BMP180_ULTRA_HIGH_RES; mode++) {
+            device.setMode(mode);
+            float rate = measureRate(10);
+            // one temperature and one pressure conversion per read, as before continuous mode
+            float sequential = 1000f / (Bmp180.TEMPERATURE_DELAY_MS + Bmp180.pressureDelayMs(mode));
+            assertTrue("mode " + mode + ": " + rate + " samples/s", rate >= TARGET_HZ[mode] * TOLERANCE);
+            assertTrue("mode " + mode + ": " + rate + " samples/s", rate > sequential);
+        }
+    }
+
+    @Test
+    public void convertsTheTemperatureOncePerInterval() throws Exception {
+        device.setMode(Bmp180.BMP180_ULTRA_LOW_POWER);
+        transport.take();
+        measureRate(5);
+        int temperature = 0;
+        int pressure = 0;
+        for (String transaction : transport.take()) {
+            if (transaction.equals("write 0xF4 0x2E")) {
+                temperature++;
+            } else if (transaction.startsWith("write 0xF4")) {
+                pressure++;
+            }
+        }
+        assertTrue(pressure > 50);
+        assertEquals(pressure / 5.0, temperature, 1);
+    }
+
+    @Test
+    public void resumesTheIntervalWhenTemperatureTrackingIsDisabled() throws Exception {
+        device.setMode(Bmp180.BMP180_ULTRA_LOW_POWER);
+        device.setTemperatureTracking(60000, 1);
+        // continuous mode then starts on the B5 of this read, without a temperature conversion
+        AwaitingCallback.convert(device);
+        device.startContinuous(5, null);
+        Thread.sleep(300);
+        device.setTemperatureTracking(0, 0);
+        Thread.sleep(50);
+        transport.take();
+        Thread.sleep(500);
+        device.stopContinuous();
+        int temperature = 0;
+        int pressure = 0;
+        for (String transaction : transport.take()) {
+            if (transaction.equals("write 0xF4 0x2E")) {
+                temperature++;
+            } else if (transaction.startsWith("write 0xF4")) {
+                pressure++;
+            }
+        }
+        assertTrue(pressure > 25);
+        assertEquals(pressure / 5.0, temperature, 1);
+    }
+
+    @Test
+    public void implausibleReadingsDoNotMultiplyTheSamplingLoop() throws Exception {
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger samples = new AtomicInteger();
+        device.setMode(Bmp180.BMP180_ULTRA_LOW_POWER);
+        device.startContinuous(10, new Bmp180.Callback() {
+            @Override
+            public void onSample(Bmp180Sample sample) {
+                samples.incrementAndGet();
+            }
+
+            @Override
+            public void onError(IOException e) {
+                errors.incrementAndGet();
+            }
+        });
+        // episodes of readings outside the range of the sensor, as from corrupted transfers
+        for (int i = 0; i < 5; i++) {
+            simulator.setTemperature(120);
+            Thread.sleep(50);
+            simulator.setTemperature(25);
+            Thread.sleep(50);
+        }
+        Thread.sleep(100);
+        transport.take();
+        int before = samples.get();
+        long startNs = System.nanoTime();
+        Thread.sleep(MEASURE_MS);
+        List<String> transactions = transport.take();
+        float seconds = (System.nanoTime() - startNs) / 1e9f;
+        device.stopContinuous();
+        int pressure = 0;
+        for (String transaction : transactions) {
+            if (transaction.startsWith("write 0xF4") && !transaction.equals("write 0xF4 0x2E")) {
+                pressure++;
+            }
+        }
+        // a single sampling loop cannot start conversions faster than they complete
+        float max = 1000f / (Bmp180.pressureDelayMs(Bmp180.BMP180_ULTRA_LOW_POWER)
+                + Bmp180.TEMPERATURE_DELAY_MS / 10f);
+        assertTrue(errors.get() > 0);
+        assertTrue(samples.get() > before);
+        assertTrue(pressure / seconds + " conversions/s", pressure / seconds <= max * 1.1f);
+    }
+
+    @Test
+    public void readSampleFailsOnceTheLatestSampleIsStale() throws Exception {
+        device.startContinuous(10, null);
+        Thread.sleep(200);
+        assertNotNull(device.readSample());
+        simulator.setErrorRate(1);
+        Thread.sleep(500);
+        try {
+            device.readSample();
+            fail("returned a sample taken before the bus failed");
+        } catch (IOException expected) {
+        }
+        simulator.setErrorRate(0);
+    }
+
+    @Test
+    public void deliversSamplesInOrderUntilStopped() throws Exception {
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        device.startContinuous(10, new Bmp180.Callback() {
+            private long last;
+
+            @Override
+            public void onSample(Bmp180Sample sample) {
+                if (sample.getTimestamp() <= last) {
+                    outOfOrder.incrementAndGet();
+                }
+                last = sample.getTimestamp();
+                count.incrementAndGet();
+            }
+
+            @Override
+            public void onError(IOException e) {
+            }
+        });
+        Thread.sleep(200);
+        device.stopContinuous();
+        Thread.sleep(100);
+        int stopped = count.get();
+        Thread.sleep(100);
+
+        assertTrue(stopped > 0);
+        assertEquals(0, outOfOrder.get());
+        assertEquals(stopped, count.get());
+    }
+
+    @Test
+    public void staysOnTheGridAtAFixedRate() throws Exception {
+        final long periodNs = 20000000L;
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        device.setMode(Bmp180.BMP180_ULTRA_LOW_POWER);
+        device.startContinuous(5, 1e9f / periodNs, new Bmp180.Callback() {
+            @Override
+            public void onSample(Bmp180Sample sample) {
+                synchronized (timestamps) {
+                    timestamps.add(sample.getTimestamp());
+                    delays.add(SystemClock.elapsedRealtimeNanos() - sample.getTimestamp());
+                }
+            }
+
+            @Override
+            public void onError(IOException e) {
+            }
+        });
+        Thread.sleep(100);
+        device.getMetrics().reset();
+        synchronized (timestamps) {
+            timestamps.clear();
+            delays.clear();
+        }
+        Thread.sleep(2 * MEASURE_MS);
+        device.stopContinuous();
+        Thread.sleep(50);
+
+        synchronized (timestamps) {
+            int samples = timestamps.size();
+            assertTrue(samples + " samples", samples > 50);
+            long first = timestamps.get(0);
+            long span = timestamps.get(samples - 1) - first;
+            assertEquals(periodNs, span / (double) (samples - 1), periodNs * 0.1);
+            // a drift-free grid: the samples keep their phase to the period over the whole run,
+            // except the few that started late
+            long[] phases = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                phases[i] = (timestamps.get(i) - first) % periodNs;
+            }
+            Arrays.sort(phases);
+            long median = phases[samples / 2];
+            int onGrid = 0;
+            for (long phase : phases) {
+                long distance = Math.abs(phase - median);
+                if (Math.min(distance, periodNs - distance) <= periodNs / 10) {
+                    onGrid++;
+                }
+            }
+            assertTrue(onGrid + " of " + samples + " samples on the grid", onGrid >= samples * 0.9);
+            // stamped at the middle of the conversion, delivered at its end
+            long halfConversion = Bmp180.pressureConversionNs(Bmp180.BMP180_ULTRA_LOW_POWER) / 2;
+            for (long delay : delays) {
+                assertTrue(delay + " ns", delay >= halfConversion);
+            }
+        }
+        Bmp180Metrics.Snapshot snapshot = device.getMetrics().snapshot();
+        assertTrue(snapshot.get("jitter.count").longValue() > 50);
+        double p50 = snapshot.get("jitter.p50_us").doubleValue();
+        assertTrue(snapshot.get("jitter.max_us").doubleValue() >= p50);
+        assertTrue(p50 + " us", p50 < periodNs / 1000.0 / 4);
+    }
+
+    @Test
+    public void countsTheTicksItCannotKeep() throws Exception {
+        // a conversion in ultra high resolution takes longer than the 12.5 ms period
+        final float rateHz = 80;
+        device.setMode(Bmp180.BMP180_ULTRA_HIGH_RES);
+        device.startContinuous(10, rateHz, null);
+        Thread.sleep(100);
+        device.getMetrics().reset();
+        Thread.sleep(MEASURE_MS);
+        Bmp180Metrics.Snapshot snapshot = device.getMetrics().snapshot();
+        device.stopContinuous();
+
+        long samples = snapshot.get("samples.count").longValue();
+        long missed = snapshot.get("samples.missed_periods").longValue();
+        assertTrue(missed + " missed", missed > 0);
+        // every tick is either sampled or counted as missed
+        assertEquals(rateHz * MEASURE_MS / 1000f, samples + missed, rateHz * 0.15f);
+    }
+
+    private float measureRate(int temperatureInterval) throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        device.startContinuous(temperatureInterval, new Bmp180.Callback() {
+            @Override
+            public void onSample(Bmp180Sample sample) {
+                count.incrementAndGet();
+            }
+
+            @Override
+            public void onError(IOException e) {
+            }
+        });
+        // let the first temperature conversion and the JIT settle
+        Thread.sleep(200);
+        int start = count.get();
+        long startNs = System.nanoTime();
+        Thread.sleep(MEASURE_MS);
+        float rate = (count.get() - start) * 1e9f / (System.nanoTime() - startNs);
+        device.stopContinuous();
+        Thread.sleep(50);
+        return rate;
+    }
+}
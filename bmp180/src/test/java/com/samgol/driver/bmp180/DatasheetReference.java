@@ -0,0 +1,53 @@
+package com.samgol.driver.bmp180;
+
+/**
+ * The compensation written out step by step as in the datasheet, with its unsigned 32 bit B7,
+ * to check the precomputed coefficients against.
+ */
+final class DatasheetReference {
+    private DatasheetReference() {
+    }
+
+    static int temperature(Bmp180Calibration c, int UT) {
+        return (b5(c, UT) + 8) >> 4;
+    }
+
+    static int pressure(Bmp180Calibration c, int UT, int UP, int mode) {
+        long p;
+        int B5 = b5(c, UT);
+
+        int B6 = B5 - 4000;
+        int X1 = (c.B2 * (B6 * B6) >> 12) >> 11;
+        int X2 = (c.AC2 * B6) >> 11;
+        int X3 = X1 + X2;
+        int B3 = (((c.AC1 * 4 + X3) << mode) + 2) / 4;
+
+        X1 = (c.AC3 * B6) >> 13;
+        X2 = (c.B1 * ((B6 * B6) >> 12)) >> 16;
+        X3 = ((X1 + X2) + 2) >> 2;
+        long B4 = (c.AC4 * (X3 + 32768)) >> 15;
+        long B7 = (long) (UP - B3) * (50000 >> mode);
+
+        if (B7 < 0x80000000L) {
+            p = (B7 * 2) / B4;
+        } else {
+            p = (B7 / B4) * 2;
+        }
+
+        X1 = (int) ((p >> 8) * (p >> 8));
+        X1 = (X1 * 3038) >> 16;
+        X2 = (int) (-7357 * p) >> 16;
+        p = p + ((X1 + X2 + 3791) >> 4);
+        return (int) p;
+    }
+
+    static float altitude(float pressure, float seaLevelPressure) {
+        return (float) (44330 * (1 - Math.pow(pressure / seaLevelPressure, 0.1903)));
+    }
+
+    private static int b5(Bmp180Calibration c, int UT) {
+        int X1 = ((UT - c.AC6) * c.AC5) >> 15;
+        int X2 = (c.MC << 11) / (X1 + c.MD);
+        return X1 + X2;
+    }
+}
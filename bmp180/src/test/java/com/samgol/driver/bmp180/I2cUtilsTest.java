@@ -0,0 +1,29 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class I2cUtilsTest {
+
+    @Test
+    public void decodesUnsigned16BitBigEndian() {
+        byte[] buffer = {0x12, 0x34, (byte) 0xFF, (byte) 0xFE};
+        assertEquals(0x1234, I2cUtils.u16BE(buffer, 0));
+        assertEquals(0xFFFE, I2cUtils.u16BE(buffer, 2));
+    }
+
+    @Test
+    public void decodesSigned16BitBigEndian() {
+        byte[] buffer = {0x7F, (byte) 0xFF, (byte) 0x80, 0x00, (byte) 0xFF, (byte) 0xFF};
+        assertEquals(32767, I2cUtils.s16BE(buffer, 0));
+        assertEquals(-32768, I2cUtils.s16BE(buffer, 2));
+        assertEquals(-1, I2cUtils.s16BE(buffer, 4));
+    }
+
+    @Test
+    public void decodesUnsigned24BitBigEndian() {
+        byte[] buffer = {0, (byte) 0xA3, 0x5C, (byte) 0xF0};
+        assertEquals(0xA35CF0, I2cUtils.u24BE(buffer, 1));
+    }
+}
@@ -0,0 +1,124 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shows that reading the latest sample does not get slower as readers are added while the
+ * device samples continuously. Every read is timed on its own, so a reader that is descheduled
+ * on a machine with fewer cores than readers only spoils a few reads, not the percentiles.
+ */
+public class LatestSampleContentionTest {
+    private static final int READS = 200000;
+    private static final int MANY_READERS = 4;
+    // allowed growth of a percentile from one reader to many, plus timer noise
+    private static final double FACTOR = 2.0;
+    private static final long SLACK_NS = 200;
+
+    private Bmp180 device;
+
+    @Before
+    public void setUp() throws Exception {
+        device = new Bmp180(new Bmp180Simulator());
+        device.startContinuous(10, null);
+        AwaitingCallback.convert(device);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    @Test
+    public void getLatestSampleLatencyDoesNotGrowWithReaders() throws Exception {
+        check(new Read() {
+            @Override
+            public Bmp180Sample read() {
+                return device.getLatestSample();
+            }
+        });
+    }
+
+    @Test
+    public void readLatestLatencyDoesNotGrowWithReaders() throws Exception {
+        check(new Read() {
+            @Override
+            public Bmp180Sample read() throws IOException {
+                return device.readLatest();
+            }
+        });
+    }
+
+    private void check(Read read) throws Exception {
+        // warm up the JIT before the reference measurement
+        measure(read, 1);
+        long[] one = measure(read, 1);
+        long[] many = measure(read, MANY_READERS);
+        for (int percentile : new int[]{50, 90}) {
+            long single = percentile(one, percentile);
+            long contended = percentile(many, percentile);
+            assertTrue("p" + percentile + ": " + single + " ns with one reader, " + contended
+                            + " ns with " + MANY_READERS,
+                    contended <= single * FACTOR + SLACK_NS);
+        }
+    }
+
+    /**
+     * Runs the readers at the same time and returns the latencies of all their reads.
+     */
+    private long[] measure(final Read read, int readers) throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(readers);
+        final long[][] latencies = new long[readers][READS];
+        final Exception[] errors = new Exception[readers];
+        Thread[] threads = new Thread[readers];
+        for (int i = 0; i < readers; i++) {
+            final int reader = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        long[] own = latencies[reader];
+                        for (int j = 0; j < READS; j++) {
+                            long begin = System.nanoTime();
+                            Bmp180Sample sample = read.read();
+                            own[j] = System.nanoTime() - begin;
+                            assertNotNull(sample);
+                        }
+                    } catch (Exception e) {
+                        errors[reader] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long[] all = new long[readers * READS];
+        for (int i = 0; i < readers; i++) {
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+            System.arraycopy(latencies[i], 0, all, i * READS, READS);
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[(int) ((long) (sorted.length - 1) * percentile / 100)];
+    }
+
+    private interface Read {
+        Bmp180Sample read() throws IOException;
+    }
+}
@@ -0,0 +1,48 @@
+package com.samgol.driver.bmp180;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes bus transactions on to another transport and records them, to check which
+ * transactions the driver issues.
+ */
+class RecordingTransport implements Bmp180Transport {
+    private final Bmp180Transport delegate;
+    private final List<String> transactions = new ArrayList<>();
+
+    RecordingTransport(Bmp180Transport delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void readRegBuffer(int register, byte[] buffer, int length) throws IOException {
+        synchronized (this) {
+            transactions.add(String.format("read 0x%02X %d", register, length));
+        }
+        delegate.readRegBuffer(register, buffer, length);
+    }
+
+    @Override
+    public void writeRegByte(int register, byte value) throws IOException {
+        synchronized (this) {
+            transactions.add(String.format("write 0x%02X 0x%02X", register, value & 0xFF));
+        }
+        delegate.writeRegByte(register, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Returns the transactions recorded so far and forgets them.
+     */
+    synchronized List<String> take() {
+        List<String> taken = new ArrayList<>(transactions);
+        transactions.clear();
+        return taken;
+    }
+}
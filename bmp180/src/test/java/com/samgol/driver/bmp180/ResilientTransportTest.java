@@ -0,0 +1,88 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs conversions against a simulator whose bus transfers fail, checking that failed transfers
+ * are retried from the conversion scheduler and that nothing stays locked during the backoff.
+ */
+public class ResilientTransportTest {
+    private static final long BACKOFF_MS = 20;
+
+    private Bmp180Simulator simulator;
+    private Bmp180 device;
+
+    @Before
+    public void setUp() {
+        simulator = new Bmp180Simulator();
+        device = new Bmp180(simulator);
+        device.getTransport().setRetryPolicy(3, BACKOFF_MS, BACKOFF_MS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    @Test
+    public void givesUpAfterTheLastAttempt() throws Exception {
+        AwaitingCallback.convert(device);
+        simulator.setErrorRate(1);
+        long before = simulator.getTransactionCount();
+        try {
+            AwaitingCallback.convert(device);
+            fail("converted without a working bus");
+        } catch (IOException e) {
+            assertFalse(e instanceof ResilientTransport.RetryException);
+            assertTrue(e.getMessage(), e.getMessage().contains("after 3 attempts"));
+        }
+        assertEquals(3, simulator.getTransactionCount() - before);
+    }
+
+    @Test
+    public void recoversFromFailedAttempts() throws Exception {
+        AwaitingCallback.convert(device);
+        simulator.setErrorRate(0.2);
+        int converted = 0;
+        for (int i = 0; i < 50; i++) {
+            try {
+                AwaitingCallback.convert(device);
+                converted++;
+            } catch (IOException e) {
+                // a transfer failed three times in a row
+            }
+        }
+        assertTrue(converted + " of 50", converted >= 40);
+        assertTrue(device.getMetrics().snapshot().get("i2c.retries").longValue() > 0);
+    }
+
+    @Test
+    public void doesNotHoldTheDeviceLockWhileBackingOff() throws Exception {
+        simulator.setErrorRate(0.3);
+        device.startContinuous(10, null);
+        long slow = 0;
+        long calls = 0;
+        long end = System.nanoTime() + 1000000000L;
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            // synchronized on the device, like every step of a conversion
+            device.getTransactionCount();
+            if (System.nanoTime() - start > BACKOFF_MS * 1000000L / 4) {
+                slow++;
+            }
+            calls++;
+        }
+        device.stopContinuous();
+        assertTrue(device.getMetrics().snapshot().get("i2c.retries").longValue() > 10);
+        assertTrue(slow + " of " + calls + " calls waited", slow <= 3);
+    }
+}
@@ -0,0 +1,40 @@
+package com.samgol.driver.bmp180;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+
+public class SeaLevelReferenceTest {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void followSkipsAndCountsInvalidLines() throws IOException {
+        SeaLevelReference reference = new SeaLevelReference();
+        String lines = "# QNH\n1013.2\nnot a number\n\n2000\n101720\n";
+        int applied = reference.follow(new ByteArrayInputStream(lines.getBytes(US_ASCII)));
+        assertEquals(2, applied);
+        assertEquals(2, reference.getErrorCount());
+        assertEquals(2, reference.getUpdateCount());
+        assertEquals(101720f, reference.get(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRejectsValuesOutOfRange() {
+        new SeaLevelReference().set(2000);
+    }
+
+    @Test
+    public void legacySetterTakesAnyValue() throws IOException {
+        Bmp180 device = new Bmp180(new Bmp180Simulator());
+        try {
+            device.setStandardSeaLevelPressure(70000);
+            assertEquals(70000f, device.getSeaLevelReference().get(), 0);
+        } finally {
+            device.close();
+        }
+    }
+}